@@ -100,6 +100,8 @@ public class AddVAT implements CustomStepDefinition {
                 .forOutputNode(OUTPUT_ID, (processorContext, outputColumnManager) -> {
                     final Optional<Number> vatRateOptional = processorContext.getStepPropertyValue(ARG_ID_VAT_RATE);
                     final Number vatRate = vatRateOptional.orElseThrow(() -> new IllegalArgumentException("StepPropertyValue [" + ARG_ID_VAT_RATE + "] not found."));
+                    // unboxed once per job rather than once per cell
+                    final double vatRateValue = vatRate.doubleValue();
 
                     final List<InputColumn> columnChooserValues = processorContext.getColumnFromChooserValues(ARG_ID_COLUMN_CHOOSER);
                     if (!columnChooserValues.isEmpty()) {
@@ -109,7 +111,7 @@ public class AddVAT implements CustomStepDefinition {
                             final CellValue cellValue = column.getValueAt(rowIndex);
                             final double doubleValue = cellValue.toDouble();
                             if (doubleValue != 0.0) {
-                                return doubleValue + (doubleValue * vatRate.doubleValue() / 100);
+                                return doubleValue + (doubleValue * vatRateValue / 100);
                             } else {
                                 return cellValue.toObject();
                             }
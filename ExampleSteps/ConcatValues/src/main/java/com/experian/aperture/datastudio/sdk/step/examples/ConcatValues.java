@@ -75,6 +75,7 @@ public class ConcatValues implements CustomStepDefinition {
                         .build())
                 .withOutputLayouts(outputLayoutBuilder -> outputLayoutBuilder
                         .forOutputNode(OUTPUT_ID, outputColumnBuilder -> outputColumnBuilder
+                                // the input columns have no evaluator and are passed through, only the new column is computed
                                 .addColumns(context -> context.getInputContext(INPUT_ID).getColumns())
                                 .addColumn(OUTPUT_COLUMN_HEADER)
                                 .build())
@@ -9,7 +9,7 @@ import com.experian.datastudio.sdk.api.step.configuration.StepIcon;
 import com.experian.datastudio.sdk.api.step.processor.*;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
 import java.util.stream.Collectors;
 
 public class DemoAggregateStep implements CustomStepDefinition {
@@ -19,6 +19,7 @@ public class DemoAggregateStep implements CustomStepDefinition {
     private static final String GROUP_COLUMN_PROP = "groupcolumnproperty";
     private static final String AGGREGATE_COLUMN_PROP = "aggregatecolumnproperty";
     private static final String AGGREGATE_TYPE_PROP = "aggregatetypeproperty";
+    private static final String DISTINCT_ERROR_PROP = "distincterrorproperty";
 
     private static final String GROUP_COLUMN = "Group";
     private static final String AGGREGATE_COLUMN = "Aggregate";
@@ -31,6 +32,33 @@ public class DemoAggregateStep implements CustomStepDefinition {
     private static final String FIRST = "first";
     private static final String LAST = "last";
     private static final String PIPE = "pipe";
+    private static final String MEDIAN = "median";
+    private static final String P95 = "p95";
+    private static final String TOP = "top" + GroupOrderStatistics.TOP_COUNT;
+    private static final String DISTINCT = "distinct";
+
+    // relative standard errors of the distinct count, the default one is estimated with 2^12 registers per group
+    private static final List<String> DISTINCT_ERRORS = Arrays.asList("0.5%", "1%", "2%", "5%");
+    private static final String DEFAULT_DISTINCT_ERROR = "2%";
+
+    // index structure 0 -> [groupCount]
+    // outputRowIndex + 1 -> [firstRow, lastRow, count, sum, min, max, distinct, sortedFrom]
+    // the first row also holds the group value.
+    // groupCount + outputRowIndex + 1 -> [aggregateColumnRow1, aggregateColumnRow2, ...]
+    // sortedFrom + rank -> [value], the values of the group sorted in ascending order
+    // all the sections come from a single grouping of the input. The member rows and the sorted values are kept in
+    // index rows of their own, so reading any other aggregate does not fetch every row of the group.
+    // the order statistics (median, p95, top) need the whole group sorted, so the groups are sorted once per index
+    // build and each statistic reads the one to three index rows of its ranks.
+    private static final int FIRST_ROW_INDEX_COLUMN = 0;
+    private static final int LAST_ROW_INDEX_COLUMN = 1;
+    private static final int COUNT_INDEX_COLUMN = 2;
+    private static final int SUM_INDEX_COLUMN = 3;
+    private static final int MIN_INDEX_COLUMN = 4;
+    private static final int MAX_INDEX_COLUMN = 5;
+    private static final int DISTINCT_INDEX_COLUMN = 6;
+    private static final int SORTED_FROM_INDEX_COLUMN = 7;
+    private static final int INDEX_COLUMN_COUNT = 8;
 
     @Override
     public StepConfiguration createConfiguration(StepConfigurationBuilder configurationBuilder) {
@@ -60,14 +88,24 @@ public class DemoAggregateStep implements CustomStepDefinition {
                                 .build())
                         .addStepProperty(stepPropertyBuilder -> stepPropertyBuilder
                                 .asCustomChooser(AGGREGATE_TYPE_PROP)
-                                .withAllowValuesProvider(ctx -> Arrays.asList(SUM, AVG, MAX, MIN, COUNT, FIRST, LAST, PIPE))
-                                // should not rebuild index on property change because technically the group index for all aggregate type is the same
+                                .withAllowValuesProvider(ctx -> Arrays.asList(SUM, AVG, MAX, MIN, COUNT, FIRST, LAST, PIPE, MEDIAN, P95, TOP, DISTINCT))
+                                // should not rebuild index on property change because the index holds the aggregates of every aggregate type
                                 .withShouldRebuildIndex(false)
                                 .withAllowSelectAll(false)
                                 .withMultipleSelect(false)
                                 .withIsRequired(true)
                                 .withLabelSupplier(uiCallbackContext -> "Aggregate type")
                                 .build())
+                        .addStepProperty(stepPropertyBuilder -> stepPropertyBuilder
+                                .asCustomChooser(DISTINCT_ERROR_PROP)
+                                .withAllowValuesProvider(ctx -> DISTINCT_ERRORS)
+                                .withDefaultValue(ctx -> Collections.singletonList(DEFAULT_DISTINCT_ERROR))
+                                // .withShouldRebuildIndex(true) the distinct counts are estimated while the index is built.
+                                .withAllowSelectAll(false)
+                                .withMultipleSelect(false)
+                                .withIsRequired(false)
+                                .withLabelSupplier(uiCallbackContext -> "Distinct count error")
+                                .build())
                         .build())
                 .withOutputLayouts(outputLayoutBuilder -> outputLayoutBuilder
                         .forOutputNode(OUTPUT_ID, outputColumnBuilder -> outputColumnBuilder
@@ -86,98 +124,156 @@ public class DemoAggregateStep implements CustomStepDefinition {
                         .indexTypeRows()
                         .provideIndexValues(ctx -> {
                             final InputColumn groupColumn = ctx.getColumnFromChooserValues(GROUP_COLUMN_PROP).get(0);
+                            final InputColumn aggregateColumn = ctx.getColumnFromChooserValues(AGGREGATE_COLUMN_PROP).get(0);
                             final long rowCount = ctx.getInputContext(INPUT_ID).orElseThrow(IllegalArgumentException::new)
                                     .getRowCount();
+                            final Optional<?> distinctError = ctx.getStepPropertyValue(DISTINCT_ERROR_PROP);
+                            //noinspection unchecked
+                            final int distinctPrecision = getDistinctPrecision(distinctError
+                                    .map(value -> (List<String>) value)
+                                    .filter(values -> !values.isEmpty())
+                                    .map(values -> values.get(0))
+                                    .orElse(DEFAULT_DISTINCT_ERROR));
 
-                            final Set<Integer> constructedGroup = new HashSet<>();
-                            final BitSet visitedRows = new BitSet((int) rowCount);
-                            final AtomicInteger outputRowCount = new AtomicInteger();
+                            // aggregates are folded while the rows are grouped, so each input row is read only once.
+                            // The rows are grouped in parallel partitions, since the input columns are also read
+                            // concurrently by the output evaluators.
+                            final RowGroups<GroupAggregates> groups = RowGroups.of(groupColumn, Math.toIntExact(rowCount),
+                                    () -> new GroupAggregates(aggregateColumn, distinctPrecision));
+                            final GroupAggregates aggregates = groups.getAccumulator();
+                            final int groupCount = groups.size();
+                            if (groupCount == 0) {
+                                groups.close();
+                            }
 
                             // the first index's row is just the total aggregate row number
-                            ctx.appendRow(() -> Collections.singletonList(outputRowCount.get()));
-
-                            for (long i = 0; i < rowCount; i++) {
-                                final int currentGroupRow = (int) i;
-                                final CellValue currentGroup = groupColumn.getValueAt(i);
-                                final int currentGroupHash = currentGroup.hashCode();
-                                if (constructedGroup.contains(currentGroupHash)) {
-                                    // this group already fully constructed, we don't have to iterate the rows again
-                                    continue;
-                                }
-
-                                // index structure outputRowIndex + 1 -> [groupValue, aggregateColumnRow1Value, aggregateColumnRow2Value, ...]
+                            ctx.appendRow(() -> Collections.singletonList(groupCount));
+
+                            // the sorted values follow the member rows, group after group, one index row per input row
+                            if (2L * groupCount + rowCount > Integer.MAX_VALUE) {
+                                groups.close();
+                                throw new IllegalStateException("Index rows exceed " + Integer.MAX_VALUE + " for " + rowCount + " input rows");
+                            }
+                            final int[] sortedFrom = new int[groupCount];
+                            int nextSortedRow = 2 * groupCount + 1;
+                            for (int group = 0; group < groupCount; group++) {
+                                sortedFrom[group] = nextSortedRow;
+                                nextSortedRow += groups.getRowCount(group);
+                            }
+
+                            for (int group = 0; group < groupCount; group++) {
+                                final int currentGroup = group;
                                 ctx.appendRow(() -> {
                                     // This callback is executed lazily as iterator exactly before the index row is written.
-                                    final List<Integer> groupRow = new ArrayList<>();
-                                    // first index column is always the group values.
-                                    groupRow.add(currentGroupRow);
-
-                                    // safe to cast to int here since max rowcount for index type rows is Integer.MAX_VALUE
-                                    for (int row = visitedRows.nextClearBit(0); row < rowCount; row++) {
-                                        if (visitedRows.get(row) || !groupColumn.getValueAt(row).equals(currentGroup)) {
-                                            continue; // this row belong to another group, so skip...
-                                        }
-                                        groupRow.add(row);
-                                        visitedRows.set(row);
-                                    }
-                                    return groupRow;
+                                    final int count = groups.getRowCount(currentGroup);
+                                    return Arrays.asList(
+                                            groups.getRow(currentGroup, 0),
+                                            groups.getRow(currentGroup, count - 1),
+                                            count,
+                                            aggregates.getSum(currentGroup),
+                                            aggregates.getMin(currentGroup),
+                                            aggregates.getMax(currentGroup),
+                                            aggregates.getDistinctCount(currentGroup),
+                                            sortedFrom[currentGroup]);
                                 });
-                                constructedGroup.add(currentGroupHash);
                             }
-                            outputRowCount.set(constructedGroup.size());
+
+                            for (int group = 0; group < groupCount; group++) {
+                                final int currentGroup = group;
+                                // The member rows are a view over the packed group rows, so they are only boxed when read.
+                                ctx.appendRow(() -> groups.getRows(currentGroup));
+                            }
+
+                            // a single supplier sorts each group when its first value is written, and releases the
+                            // packed rows after the last one
+                            final GroupOrderStatistics.SortedValues sortedValues = new GroupOrderStatistics.SortedValues(aggregateColumn, groups);
+                            for (int row = 0; row < rowCount; row++) {
+                                ctx.appendRow(sortedValues);
+                            }
                         })
                         .build())
                 .forOutputNode(OUTPUT_ID, (ctx, columnManager) -> {
                     //noinspection unchecked
                     final String aggregateType = ((List<String>) ctx.getStepPropertyValue(AGGREGATE_TYPE_PROP).orElseThrow(IllegalArgumentException::new)).get(0);
 
-                    columnManager.onValue(GROUP_COLUMN, row -> {
-                        final List<CellValue> indexRow = ctx.getIndexRowValues(INDEX_NAME, (int) row + 1);
-                        final InputColumn groupColumn = ctx.getColumnFromChooserValues(GROUP_COLUMN_PROP).get(0);
-                        if (indexRow.isEmpty()) {
-                            throw new IllegalStateException("Index row " + row + " must not be empty.");
-                        }
-                        return groupColumn.getValueAt(indexRow.get(0).toLong());
-                    });
+                    final InputColumn groupColumn = ctx.getColumnFromChooserValues(GROUP_COLUMN_PROP).get(0);
+                    final InputColumn aggregateColumn = ctx.getColumnFromChooserValues(AGGREGATE_COLUMN_PROP).get(0);
+                    final List<CellValue> indexRow = ctx.getIndexRowValues(INDEX_NAME, 0);
+                    if (indexRow.isEmpty()) {
+                        throw new IllegalStateException("Index row " + 0 + " must not be empty.");
+                    }
+                    final int groupCount = indexRow.get(0).toInt();
+
+                    // each output column fetches the index row of the group itself, since the cells of a row are not
+                    // evaluated together, and the index row is a fixed number of values
+                    columnManager.onValue(GROUP_COLUMN, row ->
+                            groupColumn.getValueAt(getAggregateRow(ctx, row).get(FIRST_ROW_INDEX_COLUMN).toLong()));
 
                     columnManager.onValue(AGGREGATE_COLUMN, row -> {
-                        final List<CellValue> indexRow = ctx.getIndexRowValues(INDEX_NAME, (int) row + 1);
-                        final InputColumn aggregateColumn = ctx.getColumnFromChooserValues(AGGREGATE_COLUMN_PROP).get(0);
-                        if (indexRow.size() <= 1) {
-                            throw new IllegalStateException("Index row " + row + " has invalid structure: index columns size <= 1");
-                        }
-                        final List<CellValue> values = indexRow.subList(1, indexRow.size());
+                        final List<CellValue> values = getAggregateRow(ctx, row);
                         switch (aggregateType) {
                             case SUM:
-                                return values.stream().map(v -> aggregateColumn.getValueAt(v.toLong())).mapToDouble(v -> v.toDouble()).sum();
+                                return values.get(SUM_INDEX_COLUMN).toDouble();
                             case AVG:
-                                return values.stream().map(v -> aggregateColumn.getValueAt(v.toLong())).mapToDouble(v -> v.toDouble()).average().orElse(0.0);
+                                return values.get(SUM_INDEX_COLUMN).toDouble() / values.get(COUNT_INDEX_COLUMN).toDouble();
                             case MAX:
-                                return values.stream().map(v -> aggregateColumn.getValueAt(v.toLong())).mapToDouble(v -> v.toDouble()).max().orElse(0.0);
+                                return values.get(MAX_INDEX_COLUMN).toDouble();
                             case MIN:
-                                return values.stream().map(v -> aggregateColumn.getValueAt(v.toLong())).mapToDouble(v -> v.toDouble()).min().orElse(0.0);
+                                return values.get(MIN_INDEX_COLUMN).toDouble();
                             case COUNT:
-                                return values.size();
+                                return values.get(COUNT_INDEX_COLUMN).toInt();
                             case FIRST:
-                                return aggregateColumn.getValueAt(values.get(0).toLong());
+                                return aggregateColumn.getValueAt(values.get(FIRST_ROW_INDEX_COLUMN).toLong());
                             case LAST:
-                                return aggregateColumn.getValueAt(values.get(values.size() - 1).toLong());
+                                return aggregateColumn.getValueAt(values.get(LAST_ROW_INDEX_COLUMN).toLong());
+                            case MEDIAN:
+                                return GroupOrderStatistics.getMedian(getSortedValues(ctx, values), values.get(COUNT_INDEX_COLUMN).toInt());
+                            case P95:
+                                return GroupOrderStatistics.getP95(getSortedValues(ctx, values), values.get(COUNT_INDEX_COLUMN).toInt());
+                            case TOP:
+                                return GroupOrderStatistics.getTop(getSortedValues(ctx, values), values.get(COUNT_INDEX_COLUMN).toInt());
+                            case DISTINCT:
+                                return values.get(DISTINCT_INDEX_COLUMN).toLong();
                             case PIPE:
-                                return values.stream().map(v -> aggregateColumn.getValueAt(v.toLong()).toString()).collect(Collectors.joining("|"));
+                                return ctx.getIndexRowValues(INDEX_NAME, groupCount + (int) row + 1).stream().map(v -> aggregateColumn.getValueAt(v.toLong()).toString()).collect(Collectors.joining("|"));
                             default:
                                 throw new IllegalStateException("Unsupported aggregate operation: " + aggregateType);
                         }
                     });
 
-                    final List<CellValue> indexRow = ctx.getIndexRowValues(INDEX_NAME, 0);
-                    if (indexRow.isEmpty()) {
-                        throw new IllegalStateException("Index row " + 0 + " must not be empty.");
-                    }
-                    return indexRow.get(0).toLong();
+                    return groupCount;
                 })
                 .build();
     }
 
+    private static List<CellValue> getAggregateRow(final StepProcessorContext ctx, final long row) {
+        final List<CellValue> values = ctx.getIndexRowValues(INDEX_NAME, (int) row + 1);
+        if (values.size() < INDEX_COLUMN_COUNT) {
+            throw new IllegalStateException("Index row " + row + " has invalid structure: index columns size < " + INDEX_COLUMN_COUNT);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the sorted values of the group of an aggregate index row by rank.
+     */
+    private static IntToDoubleFunction getSortedValues(final StepProcessorContext ctx, final List<CellValue> aggregateRow) {
+        final int sortedFrom = aggregateRow.get(SORTED_FROM_INDEX_COLUMN).toInt();
+        return rank -> ctx.getIndexRowValues(INDEX_NAME, sortedFrom + rank).get(0).toDouble();
+    }
+
+    /**
+     * Returns the precision of the distinct count sketches for a relative standard error such as "2%".
+     */
+    private static int getDistinctPrecision(final String distinctError) {
+        final String percentage = distinctError.endsWith("%") ? distinctError.substring(0, distinctError.length() - 1) : distinctError;
+        try {
+            return DistinctSketches.precisionFor(Double.parseDouble(percentage.trim()) / 100);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid distinct count error: " + distinctError, e);
+        }
+    }
+
     @Override
     public CustomTypeMetadata createMetadata(CustomTypeMetadataBuilder metadataBuilder) {
         return metadataBuilder
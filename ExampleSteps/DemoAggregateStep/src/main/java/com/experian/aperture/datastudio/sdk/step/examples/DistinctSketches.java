@@ -0,0 +1,212 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates the number of distinct values of each group with a HyperLogLog sketch, so the memory of a group
+ * is bounded by its precision rather than by its number of values.
+ *
+ * A group with {@code 2^precision} registers has a relative standard error of about {@code 1.04 / sqrt(2^precision)},
+ * see {@link #precisionFor(double)}. Small groups keep the exact hashes of their values instead, in a sorted array
+ * that grows with the group, and switch to the registers once the hashes would take more memory than them, so a large
+ * number of small groups stays cheap. Sketches of the same precision are merged by taking the maximum of each
+ * register, which gives the same result as sketching all the values at once.
+ *
+ * Values are hashed to 64 bits from their content, so distinct values only collide with a negligible probability,
+ * also while a group is counted exactly.
+ */
+final class DistinctSketches {
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 18;
+    private static final int INITIAL_SPARSE_CAPACITY = 2;
+    private static final long NULL_HASH = 0x9e3779b97f4a7c15L;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int precision;
+    private final int registerCount;
+    private final int sparseLimit;
+    // each group is either sparse (the sorted hashes seen so far, followed by unused capacity) or dense (the registers),
+    // the other entry is null
+    private final List<long[]> sparse = new ArrayList<>();
+    private final MutableIntList sparseSizes = new IntArrayList();
+    private final List<byte[]> dense = new ArrayList<>();
+
+    DistinctSketches(final int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.sparseLimit = registerCount / Long.BYTES;
+    }
+
+    /**
+     * Returns the smallest precision whose relative standard error is at most {@code relativeError}, within
+     * {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    static int precisionFor(final double relativeError) {
+        for (int precision = MIN_PRECISION; precision < MAX_PRECISION; precision++) {
+            if (1.04 / Math.sqrt(1 << precision) <= relativeError) {
+                return precision;
+            }
+        }
+        return MAX_PRECISION;
+    }
+
+    void add(final int group, final Object value) {
+        if (group == sparse.size()) {
+            sparse.add(new long[INITIAL_SPARSE_CAPACITY]);
+            sparseSizes.add(0);
+            dense.add(null);
+        }
+        addHash(group, hash(value));
+    }
+
+    void merge(final DistinctSketches other, final int[] groupIds) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can not merge sketches of precision " + other.precision + " into precision " + precision);
+        }
+        for (int group = 0; group < groupIds.length; group++) {
+            final int target = groupIds[group];
+            final byte[] otherRegisters = other.dense.get(group);
+            final long[] otherHashes = other.sparse.get(group);
+            final int otherSize = other.sparseSizes.get(group);
+            if (target == sparse.size()) {
+                sparse.add(otherRegisters == null ? Arrays.copyOf(otherHashes, Math.max(otherSize, INITIAL_SPARSE_CAPACITY)) : null);
+                sparseSizes.add(otherRegisters == null ? otherSize : 0);
+                dense.add(otherRegisters == null ? null : otherRegisters.clone());
+            } else if (otherRegisters == null) {
+                for (int i = 0; i < otherSize; i++) {
+                    addHash(target, otherHashes[i]);
+                }
+            } else {
+                final byte[] registers = toDense(target);
+                for (int register = 0; register < registerCount; register++) {
+                    registers[register] = (byte) Math.max(registers[register], otherRegisters[register]);
+                }
+            }
+        }
+    }
+
+    long estimate(final int group) {
+        final byte[] registers = dense.get(group);
+        if (registers == null) {
+            return sparseSizes.get(group);
+        }
+        double harmonicSum = 0;
+        int zeroRegisters = 0;
+        for (final byte register : registers) {
+            harmonicSum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+        final double estimate = alpha() * registerCount * registerCount / harmonicSum;
+        // linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+            return Math.round(registerCount * Math.log((double) registerCount / zeroRegisters));
+        }
+        return Math.round(estimate);
+    }
+
+    private void addHash(final int group, final long hash) {
+        final long[] hashes = sparse.get(group);
+        if (hashes != null) {
+            final int size = sparseSizes.get(group);
+            final int position = Arrays.binarySearch(hashes, 0, size, hash);
+            if (position >= 0) {
+                return;
+            }
+            if (size < sparseLimit) {
+                insert(group, hashes, size, -position - 1, hash);
+                return;
+            }
+        }
+        final byte[] registers = toDense(group);
+        final int register = (int) (hash >>> (Long.SIZE - precision));
+        // the rank of the first set bit in the remaining bits, capped for the all zero case
+        final byte rank = (byte) Math.min(Long.numberOfLeadingZeros(hash << precision) + 1, Long.SIZE - precision + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    private void insert(final int group, final long[] hashes, final int size, final int position, final long hash) {
+        long[] target = hashes;
+        if (size == hashes.length) {
+            target = Arrays.copyOf(hashes, Math.min(hashes.length * 2, sparseLimit));
+            sparse.set(group, target);
+        }
+        System.arraycopy(target, position, target, position + 1, size - position);
+        target[position] = hash;
+        sparseSizes.set(group, size + 1);
+    }
+
+    private byte[] toDense(final int group) {
+        byte[] registers = dense.get(group);
+        if (registers == null) {
+            registers = new byte[registerCount];
+            dense.set(group, registers);
+            final long[] hashes = sparse.set(group, null);
+            final int size = sparseSizes.get(group);
+            sparseSizes.set(group, 0);
+            for (int i = 0; i < size; i++) {
+                addHash(group, hashes[i]);
+            }
+        }
+        return registers;
+    }
+
+    private double alpha() {
+        switch (registerCount) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+
+    /**
+     * A 64-bit hash of the content of a value: the bits of a number, or the characters of any other value.
+     */
+    static long hash(final Object value) {
+        if (value == null) {
+            return mix(NULL_HASH);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return mix(Double.doubleToLongBits(((Number) value).doubleValue()));
+        }
+        // FNV-1a over the characters, mixed since the register is taken from the top bits
+        final String text = value.toString();
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(final long bits) {
+        // MurmurHash3 finalizer, spreads every input bit over all 64 bits
+        long hash = bits;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
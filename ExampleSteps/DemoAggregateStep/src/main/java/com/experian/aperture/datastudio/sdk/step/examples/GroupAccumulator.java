@@ -0,0 +1,22 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+/**
+ * Per-group state folded alongside the row grouping of {@link RowGroups}.
+ * Each partition of the input gets its own accumulator, and the partial results are merged
+ * in partition order once all partitions are grouped.
+ *
+ * @param <A> the accumulator type itself, so partial results can be merged without casting
+ */
+interface GroupAccumulator<A extends GroupAccumulator<A>> {
+
+    /**
+     * Folds an input row into a group. A group id not seen before is always the next unused one.
+     */
+    void add(int group, int row);
+
+    /**
+     * Folds the groups of another partition into this one. Group {@code i} of {@code other} is
+     * group {@code groupIds[i]} here, which is either an existing group or the next unused id.
+     */
+    void merge(A other, int[] groupIds);
+}
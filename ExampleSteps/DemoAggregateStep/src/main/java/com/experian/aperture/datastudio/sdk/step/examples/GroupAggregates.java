@@ -0,0 +1,67 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.CellValue;
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+import org.eclipse.collections.api.list.primitive.MutableDoubleList;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+
+/**
+ * Folds the numeric aggregates of each group (sum, min and max) and a sketch of its distinct values
+ * while the group index is built, so the output evaluators only have to look the results up.
+ */
+final class GroupAggregates implements GroupAccumulator<GroupAggregates> {
+    private final InputColumn aggregateColumn;
+    private final MutableDoubleList sums = new DoubleArrayList();
+    private final MutableDoubleList mins = new DoubleArrayList();
+    private final MutableDoubleList maxs = new DoubleArrayList();
+    private final DistinctSketches distincts;
+
+    GroupAggregates(final InputColumn aggregateColumn, final int distinctPrecision) {
+        this.aggregateColumn = aggregateColumn;
+        this.distincts = new DistinctSketches(distinctPrecision);
+    }
+
+    @Override
+    public void add(final int group, final int row) {
+        final CellValue cellValue = aggregateColumn.getValueAt(row);
+        final double value = cellValue.toDouble();
+        combine(group, value, value, value);
+        distincts.add(group, cellValue.toObject());
+    }
+
+    @Override
+    public void merge(final GroupAggregates other, final int[] groupIds) {
+        for (int group = 0; group < groupIds.length; group++) {
+            combine(groupIds[group], other.getSum(group), other.getMin(group), other.getMax(group));
+        }
+        distincts.merge(other.distincts, groupIds);
+    }
+
+    private void combine(final int group, final double sum, final double min, final double max) {
+        if (group == sums.size()) {
+            sums.add(sum);
+            mins.add(min);
+            maxs.add(max);
+        } else {
+            sums.set(group, sums.get(group) + sum);
+            mins.set(group, Math.min(mins.get(group), min));
+            maxs.set(group, Math.max(maxs.get(group), max));
+        }
+    }
+
+    double getSum(final int group) {
+        return sums.get(group);
+    }
+
+    double getMin(final int group) {
+        return mins.get(group);
+    }
+
+    double getMax(final int group) {
+        return maxs.get(group);
+    }
+
+    long getDistinctCount(final int group) {
+        return distincts.estimate(group);
+    }
+}
@@ -0,0 +1,96 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * The order statistics of one group (median, 95th percentile and the largest values), read by rank from the values
+ * of the group sorted in ascending order. The index holds the sorted values of every group, one per index row, see
+ * {@link SortedValues}, so each statistic only fetches the index rows of the one to {@link #TOP_COUNT} ranks it needs.
+ */
+final class GroupOrderStatistics {
+    static final int TOP_COUNT = 3;
+    private static final double P95 = 0.95;
+
+    private GroupOrderStatistics() {
+    }
+
+    /**
+     * @param valueAt the value of a group of {@code count} values at a rank, starting from the smallest at rank 0
+     */
+    static double getMedian(final IntToDoubleFunction valueAt, final int count) {
+        final int middle = count / 2;
+        return count % 2 == 1 ? valueAt.applyAsDouble(middle) : (valueAt.applyAsDouble(middle - 1) + valueAt.applyAsDouble(middle)) / 2;
+    }
+
+    /**
+     * Nearest-rank percentile: the smallest value that is greater than or equal to 95% of the values.
+     */
+    static double getP95(final IntToDoubleFunction valueAt, final int count) {
+        final int rank = (int) Math.ceil(P95 * count);
+        return valueAt.applyAsDouble(Math.max(rank, 1) - 1);
+    }
+
+    /**
+     * The largest {@link #TOP_COUNT} values, largest first, joined with "|".
+     */
+    static String getTop(final IntToDoubleFunction valueAt, final int count) {
+        final StringJoiner joiner = new StringJoiner("|");
+        for (int rank = count - 1; rank >= Math.max(0, count - TOP_COUNT); rank--) {
+            final double value = valueAt.applyAsDouble(rank);
+            joiner.add(Double.isFinite(value)
+                    ? BigDecimal.valueOf(value).stripTrailingZeros().toPlainString()
+                    : Double.toString(value));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Supplies the index rows holding the sorted values of every group, group after group and one value per row.
+     * It is appended once per value and relies on the index rows being supplied in order, so a single instance
+     * serves them all. Each group is read from its member rows and sorted when its first value is supplied, so only
+     * the values of one group are held at a time, and the groups are closed once the last value is supplied.
+     */
+    static final class SortedValues implements Supplier<List<?>> {
+        private final InputColumn aggregateColumn;
+        private final RowGroups<?> groups;
+        private int group = -1;
+        private int rank;
+        private double[] sorted = new double[0];
+
+        SortedValues(final InputColumn aggregateColumn, final RowGroups<?> groups) {
+            this.aggregateColumn = aggregateColumn;
+            this.groups = groups;
+        }
+
+        @Override
+        public List<?> get() {
+            if (rank == sorted.length) {
+                group++;
+                rank = 0;
+                sorted = sort(groups.getRows(group));
+            }
+            final double value = sorted[rank++];
+            if (rank == sorted.length && group == groups.size() - 1) {
+                groups.close();
+            }
+            return Collections.singletonList(value);
+        }
+
+        private double[] sort(final List<Integer> rows) {
+            final double[] values = new double[rows.size()];
+            for (int position = 0; position < values.length; position++) {
+                values[position] = aggregateColumn.getValueAt(rows.get(position)).toDouble();
+            }
+            Arrays.parallelSort(values);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fixed-length array of {@code int}s. Small arrays are kept on the heap, while arrays longer than a heap limit,
+ * {@link #HEAP_LIMIT} by default, are spilled to a temporary file, so the packed rows of a large input are bounded by
+ * disk space rather than by the maximum heap size.
+ *
+ * The file is read and written with positional reads and writes, so it is never mapped, and it is deleted
+ * when the store is closed. Sequential scans should go through the bulk {@link #get(int, int[], int)} and
+ * {@link #set(int, int[], int)}, which cost one file access per block instead of one per element.
+ * A spilled store that becomes unreachable without being closed, for example when an index build is abandoned
+ * before its last row is written, has its file closed by the next store that is spilled.
+ *
+ * Reads and writes of distinct elements may happen concurrently.
+ */
+abstract class IntStore implements Closeable {
+    static final int HEAP_LIMIT = 1 << 24;
+
+    static IntStore allocate(final int length) {
+        return allocate(length, HEAP_LIMIT);
+    }
+
+    static IntStore allocate(final int length, final int heapLimit) {
+        return length <= heapLimit ? new HeapIntStore(length) : new FileIntStore(length);
+    }
+
+    abstract int get(int index);
+
+    abstract void set(int index, int value);
+
+    /**
+     * Reads the elements {@code from} to {@code from + length - 1} into the start of {@code values}.
+     */
+    abstract void get(int from, int[] values, int length);
+
+    /**
+     * Writes the start of {@code values} to the elements {@code from} to {@code from + length - 1}.
+     */
+    abstract void set(int from, int[] values, int length);
+
+    abstract int length();
+
+    /**
+     * Releases the storage of the array, which can not be read or written afterwards.
+     */
+    @Override
+    public abstract void close();
+
+    private static final class HeapIntStore extends IntStore {
+        private final int[] values;
+
+        private HeapIntStore(final int length) {
+            this.values = new int[length];
+        }
+
+        @Override
+        int get(final int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(final int index, final int value) {
+            values[index] = value;
+        }
+
+        @Override
+        void get(final int from, final int[] values, final int length) {
+            System.arraycopy(this.values, from, values, 0, length);
+        }
+
+        @Override
+        void set(final int from, final int[] values, final int length) {
+            System.arraycopy(values, 0, this.values, from, length);
+        }
+
+        @Override
+        int length() {
+            return values.length;
+        }
+
+        @Override
+        public void close() {
+            // the array is reclaimed by the garbage collector
+        }
+    }
+
+    /**
+     * Returns the number of spilled stores whose file is still open.
+     */
+    static int openFileCount() {
+        FileIntStore.closeUnreachable();
+        return FileIntStore.OPEN_FILES.size();
+    }
+
+    private static final class FileIntStore extends IntStore {
+        // bulk reads and writes go through buffers of at most this many elements
+        private static final int BUFFER_LENGTH = 1 << 16;
+        // the files of the stores that were not closed, until the stores become unreachable
+        private static final ReferenceQueue<FileIntStore> UNREACHABLE = new ReferenceQueue<>();
+        private static final Set<OpenFile> OPEN_FILES = ConcurrentHashMap.newKeySet();
+
+        private final int length;
+        private final FileChannel channel;
+        private final OpenFile openFile;
+
+        private FileIntStore(final int length) {
+            closeUnreachable();
+            this.length = length;
+            try {
+                final Path file = Files.createTempFile("aggregate-index-", ".bin");
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to spill the index rows to a temporary file", e);
+            }
+            this.openFile = new OpenFile(this, channel);
+            OPEN_FILES.add(openFile);
+            try {
+                // sized up front, so elements that were never written read as 0
+                channel.write(ByteBuffer.allocate(1), (long) length * Integer.BYTES - 1);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Unable to spill the index rows to a temporary file", e);
+            }
+        }
+
+        private static void closeUnreachable() {
+            Reference<? extends FileIntStore> unreachable;
+            while ((unreachable = UNREACHABLE.poll()) != null) {
+                ((OpenFile) unreachable).close();
+            }
+        }
+
+        @Override
+        int get(final int index) {
+            final ByteBuffer buffer = newBuffer(1);
+            read(buffer, index);
+            return buffer.getInt(0);
+        }
+
+        @Override
+        void set(final int index, final int value) {
+            final ByteBuffer buffer = newBuffer(1);
+            buffer.putInt(0, value);
+            write(buffer, index);
+        }
+
+        @Override
+        void get(final int from, final int[] values, final int length) {
+            final ByteBuffer buffer = newBuffer(Math.min(length, BUFFER_LENGTH));
+            for (int offset = 0; offset < length; offset += BUFFER_LENGTH) {
+                final int bufferLength = Math.min(BUFFER_LENGTH, length - offset);
+                buffer.clear().limit(bufferLength * Integer.BYTES);
+                read(buffer, from + offset);
+                buffer.flip();
+                buffer.asIntBuffer().get(values, offset, bufferLength);
+            }
+        }
+
+        @Override
+        void set(final int from, final int[] values, final int length) {
+            final ByteBuffer buffer = newBuffer(Math.min(length, BUFFER_LENGTH));
+            for (int offset = 0; offset < length; offset += BUFFER_LENGTH) {
+                final int bufferLength = Math.min(BUFFER_LENGTH, length - offset);
+                buffer.clear().limit(bufferLength * Integer.BYTES);
+                buffer.asIntBuffer().put(values, offset, bufferLength);
+                write(buffer, from + offset);
+            }
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        public void close() {
+            OPEN_FILES.remove(openFile);
+            openFile.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to delete the spilled index rows", e);
+            }
+        }
+
+        private static ByteBuffer newBuffer(final int length) {
+            return ByteBuffer.allocate(length * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        private void read(final ByteBuffer buffer, final int from) {
+            final long position = (long) from * Integer.BYTES;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Element " + from + " is beyond the end of the spilled index rows");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the spilled index rows", e);
+            }
+        }
+
+        private void write(final ByteBuffer buffer, final int from) {
+            final long position = (long) from * Integer.BYTES;
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the spilled index rows", e);
+            }
+        }
+    }
+
+    /**
+     * The file of a spilled store, closed once the store becomes unreachable if it was not closed before.
+     */
+    private static final class OpenFile extends PhantomReference<FileIntStore> {
+        private final FileChannel channel;
+
+        private OpenFile(final FileIntStore store, final FileChannel channel) {
+            super(store, FileIntStore.UNREACHABLE);
+            this.channel = channel;
+        }
+
+        private void close() {
+            FileIntStore.OPEN_FILES.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the store is gone, so nothing can read the file anymore and closing it is best effort
+            }
+        }
+    }
+}
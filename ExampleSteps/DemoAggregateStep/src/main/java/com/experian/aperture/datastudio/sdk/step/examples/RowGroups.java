@@ -0,0 +1,271 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.CellValue;
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Groups the rows of an input column by cell value in a single pass over the input.
+ * Groups are ordered by the row they first appear in, and each group keeps its member
+ * row ids in input order. Cell values are compared with {@link CellValue#equals(Object)},
+ * so two distinct values sharing a hash code never end up in the same group.
+ *
+ * The member row ids of all groups are packed into one {@code int} array, group after group,
+ * with a second array holding the offset where each group starts. Large inputs are spilled to disk,
+ * see {@link IntStore}, so the groups should be closed once their rows are no longer read.
+ *
+ * The input is split into contiguous partitions that are grouped in parallel on the common
+ * fork-join pool, each into its own local groups and {@link GroupAccumulator}. The partitions
+ * are then merged in input order, so the result is the same as a sequential scan.
+ *
+ * @param <A> the type of the per-group state folded alongside the grouping
+ */
+final class RowGroups<A extends GroupAccumulator<A>> implements Closeable {
+    private static final int MIN_PARTITION_ROWS = 1 << 16;
+    private static final int SCAN_BLOCK_SIZE = 1 << 16;
+    // group ids of consecutive rows written to or read from the row group store at once
+    private static final int STORE_BLOCK_SIZE = 1024;
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final int[] offsets;
+    private final IntStore rows;
+    private final A accumulator;
+
+    private RowGroups(final int[] offsets, final IntStore rows, final A accumulator) {
+        this.offsets = offsets;
+        this.rows = rows;
+        this.accumulator = accumulator;
+    }
+
+    static <A extends GroupAccumulator<A>> RowGroups<A> of(final InputColumn groupColumn,
+                                                          final int rowCount,
+                                                          final Supplier<A> accumulatorFactory) {
+        return of(groupColumn, rowCount, accumulatorFactory, IntStore.HEAP_LIMIT);
+    }
+
+    /**
+     * @param heapLimit the longest array kept on the heap, see {@link IntStore#allocate(int, int)}
+     */
+    static <A extends GroupAccumulator<A>> RowGroups<A> of(final InputColumn groupColumn,
+                                                          final int rowCount,
+                                                          final Supplier<A> accumulatorFactory,
+                                                          final int heapLimit) {
+        // the group id of each row, local to its partition until the partitions are merged
+        try (IntStore rowGroups = IntStore.allocate(rowCount, heapLimit)) {
+            return of(groupColumn, rowCount, accumulatorFactory, rowGroups, heapLimit);
+        }
+    }
+
+    private static <A extends GroupAccumulator<A>> RowGroups<A> of(final InputColumn groupColumn,
+                                                                  final int rowCount,
+                                                                  final Supplier<A> accumulatorFactory,
+                                                                  final IntStore rowGroups,
+                                                                  final int heapLimit) {
+        final int partitionCount = Math.max(1, Math.min(
+                ForkJoinPool.getCommonPoolParallelism() * PARTITIONS_PER_THREAD,
+                rowCount / MIN_PARTITION_ROWS));
+        final List<Partition<A>> partitions = IntStream.range(0, partitionCount)
+                .parallel()
+                .mapToObj(partition -> {
+                    final Partition<A> rowPartition = new Partition<>(
+                            (int) ((long) rowCount * partition / partitionCount),
+                            (int) ((long) rowCount * (partition + 1) / partitionCount),
+                            accumulatorFactory.get());
+                    rowPartition.group(groupColumn, rowGroups);
+                    return rowPartition;
+                })
+                .collect(Collectors.toList());
+
+        // merge in input order so that group ids follow the first appearance of each value
+        final ObjectIntHashMap<CellValue> groupIds = new ObjectIntHashMap<>();
+        final A accumulator = accumulatorFactory.get();
+        for (final Partition<A> partition : partitions) {
+            partition.globalGroupIds = new int[partition.keys.size()];
+            for (int group = 0; group < partition.globalGroupIds.length; group++) {
+                partition.globalGroupIds[group] = groupIds.getIfAbsentPut(partition.keys.get(group), groupIds.size());
+            }
+            accumulator.merge(partition.accumulator, partition.globalGroupIds);
+        }
+        partitions.parallelStream().forEach(partition -> partition.toGlobalGroupIds(rowGroups));
+
+        final int groupCount = groupIds.size();
+        final int[] offsets = new int[groupCount + 1];
+        final int[] blockGroups = new int[SCAN_BLOCK_SIZE];
+        for (int blockFrom = 0; blockFrom < rowCount; blockFrom += SCAN_BLOCK_SIZE) {
+            final int length = Math.min(SCAN_BLOCK_SIZE, rowCount - blockFrom);
+            rowGroups.get(blockFrom, blockGroups, length);
+            for (int i = 0; i < length; i++) {
+                offsets[blockGroups[i] + 1]++;
+            }
+        }
+        for (int group = 0; group < groupCount; group++) {
+            offsets[group + 1] += offsets[group];
+        }
+
+        return new RowGroups<>(offsets, scatter(rowGroups, offsets, rowCount, heapLimit), accumulator);
+    }
+
+    /**
+     * Packs the row ids group after group, each row going to the next free position of its group.
+     * The positions of a spilled store are filled a window of {@code heapLimit} positions at a time: each window
+     * is gathered on the heap from a scan of the group ids and then written at once, so the file is written
+     * sequentially instead of once per row, at the cost of one scan of the group ids per window.
+     */
+    private static IntStore scatter(final IntStore rowGroups, final int[] offsets, final int rowCount, final int heapLimit) {
+        final IntStore rows = IntStore.allocate(rowCount, heapLimit);
+        final int[] blockGroups = new int[SCAN_BLOCK_SIZE];
+        if (rowCount <= heapLimit) {
+            // kept on the heap, so each row is a plain array store
+            final int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int blockFrom = 0; blockFrom < rowCount; blockFrom += SCAN_BLOCK_SIZE) {
+                final int length = Math.min(SCAN_BLOCK_SIZE, rowCount - blockFrom);
+                rowGroups.get(blockFrom, blockGroups, length);
+                for (int i = 0; i < length; i++) {
+                    rows.set(next[blockGroups[i]]++, blockFrom + i);
+                }
+            }
+            return rows;
+        }
+        try {
+            final int[] window = new int[Math.max(heapLimit, 1)];
+            for (int windowFrom = 0; windowFrom < rowCount; windowFrom += window.length) {
+                final int windowLength = Math.min(window.length, rowCount - windowFrom);
+                final int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+                for (int blockFrom = 0; blockFrom < rowCount; blockFrom += SCAN_BLOCK_SIZE) {
+                    final int length = Math.min(SCAN_BLOCK_SIZE, rowCount - blockFrom);
+                    rowGroups.get(blockFrom, blockGroups, length);
+                    for (int i = 0; i < length; i++) {
+                        final int position = next[blockGroups[i]]++ - windowFrom;
+                        if (position >= 0 && position < windowLength) {
+                            window[position] = blockFrom + i;
+                        }
+                    }
+                }
+                rows.set(windowFrom, window, windowLength);
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            rows.close();
+            throw e;
+        }
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    int getRowCount(final int group) {
+        return offsets[group + 1] - offsets[group];
+    }
+
+    int getRow(final int group, final int position) {
+        return rows.get(offsets[group] + position);
+    }
+
+    A getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * Releases the packed rows, which can not be read afterwards.
+     */
+    @Override
+    public void close() {
+        rows.close();
+    }
+
+    /**
+     * Returns the member row ids of a group as a read-only view over the packed array,
+     * so handing the rows to an index does not copy or box them up front.
+     * The view reads the packed rows a block at a time, so it is meant to be read by a single thread.
+     */
+    List<Integer> getRows(final int group) {
+        return new RowsView(offsets[group], getRowCount(group));
+    }
+
+    private static final class Partition<A extends GroupAccumulator<A>> {
+        private final int from;
+        private final int to;
+        private final A accumulator;
+        private final List<CellValue> keys = new ArrayList<>();
+        private int[] globalGroupIds;
+
+        private Partition(final int from, final int to, final A accumulator) {
+            this.from = from;
+            this.to = to;
+            this.accumulator = accumulator;
+        }
+
+        private void group(final InputColumn groupColumn, final IntStore rowGroups) {
+            final ObjectIntHashMap<CellValue> groupIds = new ObjectIntHashMap<>();
+            final int[] blockGroups = new int[STORE_BLOCK_SIZE];
+            for (int blockFrom = from; blockFrom < to; blockFrom += STORE_BLOCK_SIZE) {
+                final int length = Math.min(STORE_BLOCK_SIZE, to - blockFrom);
+                for (int i = 0; i < length; i++) {
+                    final CellValue value = groupColumn.getValueAt(blockFrom + i);
+                    final int newGroup = keys.size();
+                    final int group = groupIds.getIfAbsentPut(value, newGroup);
+                    if (group == newGroup) {
+                        keys.add(value);
+                    }
+                    blockGroups[i] = group;
+                    accumulator.add(group, blockFrom + i);
+                }
+                rowGroups.set(blockFrom, blockGroups, length);
+            }
+        }
+
+        private void toGlobalGroupIds(final IntStore rowGroups) {
+            final int[] blockGroups = new int[STORE_BLOCK_SIZE];
+            for (int blockFrom = from; blockFrom < to; blockFrom += STORE_BLOCK_SIZE) {
+                final int length = Math.min(STORE_BLOCK_SIZE, to - blockFrom);
+                rowGroups.get(blockFrom, blockGroups, length);
+                for (int i = 0; i < length; i++) {
+                    blockGroups[i] = globalGroupIds[blockGroups[i]];
+                }
+                rowGroups.set(blockFrom, blockGroups, length);
+            }
+        }
+    }
+
+    private final class RowsView extends AbstractList<Integer> implements RandomAccess {
+        private final int from;
+        private final int size;
+        private final int[] block;
+        private int blockFrom = -1;
+
+        private RowsView(final int from, final int size) {
+            this.from = from;
+            this.size = size;
+            this.block = new int[Math.min(size, STORE_BLOCK_SIZE)];
+        }
+
+        @Override
+        public Integer get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            if (blockFrom < 0 || index < blockFrom || index >= blockFrom + block.length) {
+                blockFrom = index;
+                rows.get(from + index, block, Math.min(block.length, size - index));
+            }
+            return block[index - blockFrom];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DistinctSketchesTest {
+    private static final int PRECISION = 12;
+    // three times the relative standard error of 1.04 / sqrt(2^12)
+    private static final double ERROR_BOUND = 3 * 1.04 / Math.sqrt(1 << PRECISION);
+
+    @Test
+    void testSmallGroupIsExact() {
+        final DistinctSketches sketches = new DistinctSketches(PRECISION);
+        for (int i = 0; i < 1000; i++) {
+            sketches.add(0, i % 300);
+        }
+        Assertions.assertEquals(300, sketches.estimate(0));
+    }
+
+    @Test
+    void testValuesSharingHashCodeAreCountedSeparately() {
+        final DistinctSketches sketches = new DistinctSketches(PRECISION);
+        // "Aa" and "BB" have the same hashCode, and so do all their concatenations of the same length
+        final String[] pairs = {"Aa", "BB"};
+        for (int i = 0; i < 256; i++) {
+            final StringBuilder value = new StringBuilder();
+            for (int bit = 0; bit < 8; bit++) {
+                value.append(pairs[(i >> bit) & 1]);
+            }
+            sketches.add(0, value.toString());
+        }
+        Assertions.assertEquals(256, sketches.estimate(0));
+    }
+
+    @Test
+    void testPrecisionForErrorBound() {
+        Assertions.assertEquals(12, DistinctSketches.precisionFor(0.02));
+        Assertions.assertEquals(14, DistinctSketches.precisionFor(0.01));
+        Assertions.assertEquals(16, DistinctSketches.precisionFor(0.005));
+        Assertions.assertEquals(DistinctSketches.MIN_PRECISION, DistinctSketches.precisionFor(0.5));
+        Assertions.assertEquals(DistinctSketches.MAX_PRECISION, DistinctSketches.precisionFor(0.0001));
+    }
+
+    @Test
+    void testLargeGroupIsWithinErrorBound() {
+        for (final int distinct : new int[]{10_000, 100_000, 1_000_000}) {
+            final DistinctSketches sketches = new DistinctSketches(PRECISION);
+            for (int i = 0; i < distinct; i++) {
+                // every value is added twice, and must only be counted once
+                sketches.add(0, "value-" + i);
+                sketches.add(0, "value-" + i);
+            }
+            final double error = Math.abs(sketches.estimate(0) - distinct) / (double) distinct;
+            Assertions.assertTrue(error <= ERROR_BOUND, "Relative error for " + distinct + " values: " + error);
+        }
+    }
+
+    @Test
+    void testMergeEqualsSketchOfAllValues() {
+        final DistinctSketches all = new DistinctSketches(PRECISION);
+        final DistinctSketches merged = new DistinctSketches(PRECISION);
+        final DistinctSketches other = new DistinctSketches(PRECISION);
+        // group 0 is dense on both sides, group 1 is sparse here and dense in the other partition,
+        // group 2 is sparse on both sides, and group 3 only appears in the other partition
+        final int[][] valueCounts = {{50_000, 50_000}, {100, 50_000}, {100, 100}, {0, 50_000}};
+        for (int group = 0; group < valueCounts.length; group++) {
+            for (int i = 0; i < valueCounts[group][0]; i++) {
+                all.add(group, group + "-" + i);
+                merged.add(group, group + "-" + i);
+            }
+        }
+        for (int group = 0; group < valueCounts.length; group++) {
+            // half of the values of the other partition were also seen in this one
+            for (int i = valueCounts[group][0] / 2; i < valueCounts[group][0] / 2 + valueCounts[group][1]; i++) {
+                all.add(group, group + "-" + i);
+                other.add(group, group + "-" + i);
+            }
+        }
+
+        merged.merge(other, new int[]{0, 1, 2, 3});
+
+        for (int group = 0; group < valueCounts.length; group++) {
+            Assertions.assertEquals(all.estimate(group), merged.estimate(group));
+        }
+        Assertions.assertEquals(150, merged.estimate(2));
+    }
+}
@@ -0,0 +1,59 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+class GroupOrderStatisticsTest {
+
+    @Test
+    void testMedianOfEvenCountIsMeanOfMiddleValues() {
+        Assertions.assertEquals(2.5, GroupOrderStatistics.getMedian(ranks(1, 2, 3, 4), 4));
+        Assertions.assertEquals(3.0, GroupOrderStatistics.getMedian(ranks(1, 2, 3, 4, 5), 5));
+        Assertions.assertEquals(7.0, GroupOrderStatistics.getMedian(ranks(7), 1));
+    }
+
+    @Test
+    void testP95IsNearestRank() {
+        // the value at rank r is r + 1
+        final IntToDoubleFunction values = rank -> rank + 1;
+        // rank ceil(0.95 * 20) = 19
+        Assertions.assertEquals(19.0, GroupOrderStatistics.getP95(values, 20));
+        // rank ceil(0.95 * 21) = 20
+        Assertions.assertEquals(20.0, GroupOrderStatistics.getP95(values, 21));
+        Assertions.assertEquals(95.0, GroupOrderStatistics.getP95(values, 100));
+        Assertions.assertEquals(7.0, GroupOrderStatistics.getP95(ranks(7), 1));
+    }
+
+    @Test
+    void testTopIsLargestFirstWithoutTrailingZeros() {
+        Assertions.assertEquals("100|2.5|2", GroupOrderStatistics.getTop(ranks(-1, 2, 2.5, 100), 4));
+        Assertions.assertEquals("2|1", GroupOrderStatistics.getTop(ranks(1, 2), 2));
+        Assertions.assertEquals("NaN|Infinity|0.1", GroupOrderStatistics.getTop(ranks(0.1, Double.POSITIVE_INFINITY, Double.NaN), 3));
+    }
+
+    @Test
+    void testSortedValuesAreSuppliedGroupAfterGroup() {
+        final Object[] groupValues = {"a", "b", "a", "b", "a"};
+        final Object[] aggregateValues = {3, 20, 1, 10, 2};
+        final InputColumn aggregateColumn = TestColumns.of(aggregateValues);
+        final RowGroups<GroupAggregates> groups = RowGroups.of(TestColumns.of(groupValues), groupValues.length,
+                () -> new GroupAggregates(aggregateColumn, 12));
+        final GroupOrderStatistics.SortedValues sortedValues = new GroupOrderStatistics.SortedValues(aggregateColumn, groups);
+
+        final List<Object> supplied = new ArrayList<>();
+        for (int row = 0; row < groupValues.length; row++) {
+            supplied.addAll(sortedValues.get());
+        }
+        Assertions.assertEquals(Arrays.asList(1.0, 2.0, 3.0, 10.0, 20.0), supplied);
+    }
+
+    private static IntToDoubleFunction ranks(final double... sorted) {
+        return rank -> sorted[rank];
+    }
+}
@@ -0,0 +1,61 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+class IntStoreTest {
+    // longer than the bulk buffers of a spilled store, so bulk reads and writes take several file accesses
+    private static final int LENGTH = 200_000;
+
+    @Test
+    void testSpilledStoreReadsWhatWasWritten() {
+        try (IntStore store = IntStore.allocate(LENGTH, 1000)) {
+            Assertions.assertEquals(LENGTH, store.length());
+            // sized up front, so elements that were never written read as 0
+            Assertions.assertEquals(0, store.get(LENGTH - 1));
+
+            final int[] values = new int[LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                values[i] = i * 31 - 7;
+            }
+            store.set(0, values, LENGTH);
+            store.set(5, -5);
+            values[5] = -5;
+
+            final int[] read = new int[LENGTH];
+            store.get(0, read, LENGTH);
+            Assertions.assertTrue(Arrays.equals(values, read));
+            Assertions.assertEquals(values[LENGTH - 1], store.get(LENGTH - 1));
+
+            // a bulk read into the start of a shorter array, from the middle of the store
+            final int[] block = new int[10];
+            store.get(100_000, block, 10);
+            Assertions.assertTrue(Arrays.equals(Arrays.copyOfRange(values, 100_000, 100_010), block));
+        }
+    }
+
+    @Test
+    void testClosedSpilledStoreCannotBeRead() {
+        final IntStore store = IntStore.allocate(LENGTH, 1000);
+        store.close();
+        Assertions.assertThrows(UncheckedIOException.class, () -> store.get(0));
+    }
+
+    @Test
+    void testUnreachableSpilledStoreIsClosed() throws InterruptedException {
+        final int openFiles = IntStore.openFileCount();
+        IntStore store = IntStore.allocate(LENGTH, 1000);
+        Assertions.assertEquals(openFiles + 1, IntStore.openFileCount());
+
+        // as left by an index build that is abandoned before its last row is written
+        store = null;
+        for (int attempt = 0; attempt < 50 && IntStore.openFileCount() > openFiles; attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(openFiles, IntStore.openFileCount());
+    }
+}
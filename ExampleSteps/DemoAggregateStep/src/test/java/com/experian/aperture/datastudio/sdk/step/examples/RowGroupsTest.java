@@ -0,0 +1,74 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class RowGroupsTest {
+    // several times the minimum partition size, so the rows are grouped in parallel partitions
+    private static final int ROW_COUNT = 300_000;
+
+    @Test
+    void testPartitionedGroupingEqualsSequentialScan() {
+        final Object[] values = new Object[ROW_COUNT];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            // mostly groups spread over every partition, plus groups that first appear in later partitions
+            values[row] = row % 50_000 == 0 ? "first-" + row : row % 7 == 0 ? null : (int) ((row * 7919L) % 1009);
+        }
+        final Map<Object, List<Integer>> expected = new LinkedHashMap<>();
+        for (int row = 0; row < ROW_COUNT; row++) {
+            expected.computeIfAbsent(values[row], value -> new ArrayList<>()).add(row);
+        }
+
+        try (RowGroups<GroupAggregates> groups = RowGroups.of(TestColumns.of(values), ROW_COUNT,
+                () -> new GroupAggregates(TestColumns.of(values), 12))) {
+            Assertions.assertEquals(expected.size(), groups.size());
+            int group = 0;
+            for (final Map.Entry<Object, List<Integer>> expectedGroup : expected.entrySet()) {
+                final List<Integer> rows = expectedGroup.getValue();
+                Assertions.assertEquals(rows, new ArrayList<>(groups.getRows(group)));
+                Assertions.assertEquals(rows.size(), groups.getRowCount(group));
+                Assertions.assertEquals((int) rows.get(rows.size() - 1), groups.getRow(group, rows.size() - 1));
+
+                final GroupAggregates aggregates = groups.getAccumulator();
+                final double value = expectedGroup.getKey() instanceof Integer ? (Integer) expectedGroup.getKey() : 0;
+                Assertions.assertEquals(value * rows.size(), aggregates.getSum(group));
+                Assertions.assertEquals(value, aggregates.getMin(group));
+                Assertions.assertEquals(value, aggregates.getMax(group));
+                Assertions.assertEquals(1, aggregates.getDistinctCount(group));
+                group++;
+            }
+        }
+    }
+
+    @Test
+    void testSpilledGroupingEqualsHeapGrouping() {
+        final Object[] values = new Object[ROW_COUNT];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            values[row] = (int) ((row * 7919L) % 1009);
+        }
+
+        // both stores are spilled, and the packed rows are written in many windows
+        try (RowGroups<GroupAggregates> heap = RowGroups.of(TestColumns.of(values), ROW_COUNT,
+                () -> new GroupAggregates(TestColumns.of(values), 12));
+             RowGroups<GroupAggregates> spilled = RowGroups.of(TestColumns.of(values), ROW_COUNT,
+                     () -> new GroupAggregates(TestColumns.of(values), 12), 10_000)) {
+            Assertions.assertEquals(heap.size(), spilled.size());
+            for (int group = 0; group < heap.size(); group++) {
+                Assertions.assertEquals(new ArrayList<>(heap.getRows(group)), new ArrayList<>(spilled.getRows(group)));
+            }
+        }
+    }
+
+    @Test
+    void testEmptyInputHasNoGroups() {
+        try (RowGroups<GroupAggregates> groups = RowGroups.of(TestColumns.of(), 0,
+                () -> new GroupAggregates(TestColumns.of(), 12))) {
+            Assertions.assertEquals(0, groups.size());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.CellValue;
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Objects;
+
+/**
+ * In-memory input columns for tests. Only the methods read by the step are implemented, through proxies, so the
+ * columns do not have to follow every method of the SDK interfaces.
+ */
+final class TestColumns {
+    private TestColumns() {
+    }
+
+    static InputColumn of(final Object... values) {
+        return (InputColumn) Proxy.newProxyInstance(TestColumns.class.getClassLoader(), new Class<?>[]{InputColumn.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getValueAt":
+                            return cell(values[Math.toIntExact((Long) args[0])]);
+                        case "getStringValueAt":
+                            final Object value = values[Math.toIntExact((Long) args[0])];
+                            return value == null ? null : value.toString();
+                        case "getName":
+                            return "column";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    static CellValue cell(final Object value) {
+        return (CellValue) Proxy.newProxyInstance(TestColumns.class.getClassLoader(), new Class<?>[]{CellValue.class},
+                new CellHandler(value));
+    }
+
+    private static final class CellHandler implements InvocationHandler {
+        private final Object value;
+
+        private CellHandler(final Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final java.lang.reflect.Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "toObject":
+                    return value;
+                case "isNull":
+                    return value == null;
+                case "isNumeric":
+                    return value instanceof Number;
+                case "toDouble":
+                    return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+                case "toLong":
+                    return value instanceof Number ? ((Number) value).longValue() : 0L;
+                case "toInt":
+                    return value instanceof Number ? ((Number) value).intValue() : 0;
+                case "toString":
+                    return String.valueOf(value);
+                case "hashCode":
+                    return Objects.hashCode(value);
+                case "equals":
+                    return args[0] != null
+                            && Proxy.isProxyClass(args[0].getClass())
+                            && Proxy.getInvocationHandler(args[0]) instanceof CellHandler
+                            && Objects.equals(value, ((CellHandler) Proxy.getInvocationHandler(args[0])).value);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
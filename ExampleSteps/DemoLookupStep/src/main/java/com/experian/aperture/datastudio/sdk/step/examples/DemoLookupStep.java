@@ -0,0 +1,135 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.CustomTypeMetadata;
+import com.experian.datastudio.sdk.api.CustomTypeMetadataBuilder;
+import com.experian.datastudio.sdk.api.step.CustomStepDefinition;
+import com.experian.datastudio.sdk.api.step.configuration.StepConfiguration;
+import com.experian.datastudio.sdk.api.step.configuration.StepConfigurationBuilder;
+import com.experian.datastudio.sdk.api.step.configuration.StepIcon;
+import com.experian.datastudio.sdk.api.step.processor.*;
+
+/**
+ * Looks up each row of a source input in a reference input by key, and adds the value found in the reference
+ * input together with the number of matching reference rows.
+ * The reference input is indexed by key once, so each lookup costs a few index reads instead of a scan.
+ */
+public class DemoLookupStep implements CustomStepDefinition {
+    private static final String INDEX_NAME = "keyindex";
+    private static final String SOURCE_INPUT_ID = "input0";
+    private static final String REFERENCE_INPUT_ID = "input1";
+    private static final String OUTPUT_ID = "output0";
+    private static final String SOURCE_KEY_COLUMN_PROP = "sourcekeycolumnproperty";
+    private static final String REFERENCE_KEY_COLUMN_PROP = "referencekeycolumnproperty";
+    private static final String REFERENCE_VALUE_COLUMN_PROP = "referencevaluecolumnproperty";
+
+    private static final String LOOKUP_VALUE_COLUMN = "Lookup Value";
+    private static final String MATCH_COUNT_COLUMN = "Match Count";
+
+    @Override
+    public StepConfiguration createConfiguration(StepConfigurationBuilder configurationBuilder) {
+        return configurationBuilder
+                .withNodes(stepNodeBuilder -> stepNodeBuilder
+                        .addInputNode(inputNodeBuilder -> inputNodeBuilder
+                                .withId(SOURCE_INPUT_ID)
+                                .withLabel("Source")
+                                .withIsRequired(true)
+                                .build())
+                        .addInputNode(inputNodeBuilder -> inputNodeBuilder
+                                .withId(REFERENCE_INPUT_ID)
+                                .withLabel("Reference")
+                                .withIsRequired(true)
+                                .build())
+                        .addOutputNode(OUTPUT_ID)
+                        .build())
+                .withStepProperties(stepPropertiesBuilder -> stepPropertiesBuilder
+                        .addStepProperty(stepPropertyBuilder -> stepPropertyBuilder
+                                .asColumnChooser(SOURCE_KEY_COLUMN_PROP)
+                                .forInputNode(SOURCE_INPUT_ID)
+                                .withAllowSelectAll(false)
+                                .withMultipleSelect(false)
+                                .withIsRequired(true)
+                                // the index is built from the reference input only, so the source key doesn't rebuild it
+                                .withShouldRebuildIndex(false)
+                                .withLabelSupplier(uiCallbackContext -> "Source Key Column")
+                                .build())
+                        .addStepProperty(stepPropertyBuilder -> stepPropertyBuilder
+                                .asColumnChooser(REFERENCE_KEY_COLUMN_PROP)
+                                .forInputNode(REFERENCE_INPUT_ID)
+                                .withAllowSelectAll(false)
+                                .withMultipleSelect(false)
+                                .withIsRequired(true)
+                                // .withShouldRebuildIndex(true) step property by default will rebuild index on change (true).
+                                .withLabelSupplier(uiCallbackContext -> "Reference Key Column")
+                                .build())
+                        .addStepProperty(stepPropertyBuilder -> stepPropertyBuilder
+                                .asColumnChooser(REFERENCE_VALUE_COLUMN_PROP)
+                                .forInputNode(REFERENCE_INPUT_ID)
+                                .withAllowSelectAll(false)
+                                .withMultipleSelect(false)
+                                .withIsRequired(true)
+                                // the index holds reference row ids, so the value column is only read by the main processing
+                                .withShouldRebuildIndex(false)
+                                .withLabelSupplier(uiCallbackContext -> "Reference Value Column")
+                                .build())
+                        .build())
+                .withOutputLayouts(outputLayoutBuilder -> outputLayoutBuilder
+                        .forOutputNode(OUTPUT_ID, outputColumnBuilder -> outputColumnBuilder
+                                .addColumns(context -> context.getInputContext(SOURCE_INPUT_ID).getColumns())
+                                .addColumn(LOOKUP_VALUE_COLUMN)
+                                .addColumn(MATCH_COUNT_COLUMN)
+                                .build())
+                        .build())
+                .withIcon(StepIcon.SEARCH)
+                .build();
+    }
+
+    @Override
+    public StepProcessor createProcessor(StepProcessorBuilder processorBuilder) {
+        return processorBuilder
+                .registerIndex(INDEX_NAME, indexBuilder -> indexBuilder
+                        .indexTypeRows()
+                        .provideIndexValues(ctx -> {
+                            final InputColumn referenceKeyColumn = ctx.getColumnFromChooserValues(REFERENCE_KEY_COLUMN_PROP).get(0);
+                            final long rowCount = ctx.getInputContext(REFERENCE_INPUT_ID).orElseThrow(IllegalArgumentException::new)
+                                    .getRowCount();
+                            // row ids are stored as int, so the reference input is limited to Integer.MAX_VALUE rows
+                            KeyedIndex.build(ctx, referenceKeyColumn, Math.toIntExact(rowCount));
+                        })
+                        .build())
+                .forOutputNode(OUTPUT_ID, (ctx, columnManager) -> {
+                    final InputColumn sourceKeyColumn = ctx.getColumnFromChooserValues(SOURCE_KEY_COLUMN_PROP).get(0);
+                    final InputColumn referenceKeyColumn = ctx.getColumnFromChooserValues(REFERENCE_KEY_COLUMN_PROP).get(0);
+                    final InputColumn referenceValueColumn = ctx.getColumnFromChooserValues(REFERENCE_VALUE_COLUMN_PROP).get(0);
+                    final KeyedIndex keyIndex = KeyedIndex.open(ctx, INDEX_NAME, referenceKeyColumn);
+
+                    // each output column looks the key up itself, since the cells of a row are not evaluated together,
+                    // and a lookup only probes a few fixed size index rows
+                    columnManager.onValue(LOOKUP_VALUE_COLUMN, row -> {
+                        final KeyedIndex.Match match = keyIndex.lookup(KeyedIndex.keyAt(sourceKeyColumn, row));
+                        // the first matching reference row wins
+                        return match == null ? null : referenceValueColumn.getValueAt(match.getFirstRow());
+                    });
+
+                    columnManager.onValue(MATCH_COUNT_COLUMN, row -> {
+                        final KeyedIndex.Match match = keyIndex.lookup(KeyedIndex.keyAt(sourceKeyColumn, row));
+                        return match == null ? 0 : match.getCount();
+                    });
+
+                    return ctx.getInputContext(SOURCE_INPUT_ID).orElseThrow(IllegalArgumentException::new).getRowCount();
+                })
+                .build();
+    }
+
+    @Override
+    public CustomTypeMetadata createMetadata(CustomTypeMetadataBuilder metadataBuilder) {
+        return metadataBuilder
+                .withName("Example: Lookup Step")
+                .withDescription("Step to demonstrate keyed lookup using index API")
+                .withMajorVersion(0)
+                .withMinorVersion(0)
+                .withPatchVersion(0)
+                .withDeveloper("Experian")
+                .withLicense("Apache License Version 2.0")
+                .build();
+    }
+}
@@ -0,0 +1,157 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.CellValue;
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+import com.experian.datastudio.sdk.api.step.processor.RowBasedIndex;
+import com.experian.datastudio.sdk.api.step.processor.StepProcessorContext;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An open-addressing hash table laid out over the rows of an {@code indexTypeRows} index, so the rows of an input
+ * can be looked up by key from the main processing without scanning the input.
+ *
+ * Index row 0 holds the capacity of the table, which is a power of two. Index row {@code slot + 1} holds the id of
+ * the first input row of one key and the number of input rows sharing that key, and an empty index row is a free
+ * slot. A key is stored in the first free slot at or after {@code hash(key) & (capacity - 1)}, and the table is
+ * kept at most half full, so a probe only fetches two values per slot and a lookup probes few slots.
+ *
+ * Keys are the string values of the key column, so cells of different inputs match whenever they read the same.
+ * Null keys are not indexed and never match.
+ */
+final class KeyedIndex {
+    private static final int CAPACITY_INDEX_ROW = 0;
+    private static final int FIRST_ROW_INDEX_COLUMN = 0;
+    private static final int COUNT_INDEX_COLUMN = 1;
+
+    private final StepProcessorContext context;
+    private final String indexName;
+    private final InputColumn keyColumn;
+    private final int capacity;
+
+    private KeyedIndex(final StepProcessorContext context, final String indexName, final InputColumn keyColumn, final int capacity) {
+        this.context = context;
+        this.indexName = indexName;
+        this.keyColumn = keyColumn;
+        this.capacity = capacity;
+    }
+
+    /**
+     * The input rows sharing one key.
+     */
+    static final class Match {
+        private final long firstRow;
+        private final int count;
+
+        private Match(final long firstRow, final int count) {
+            this.firstRow = firstRow;
+            this.count = count;
+        }
+
+        long getFirstRow() {
+            return firstRow;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Returns the key of a row of {@code column}, or null if the cell is null.
+     */
+    static String keyAt(final InputColumn column, final long row) {
+        return column.getValueAt(row).isNull() ? null : column.getStringValueAt(row);
+    }
+
+    /**
+     * Writes the rows of the key column into the index being provided by {@code ctx}.
+     */
+    static void build(final RowBasedIndex.ValueContext ctx, final InputColumn keyColumn, final int rowCount) {
+        final ObjectIntHashMap<String> keyIds = new ObjectIntHashMap<>();
+        final List<String> keys = new ArrayList<>();
+        final MutableIntList firstRows = new IntArrayList();
+        final MutableIntList counts = new IntArrayList();
+        for (int row = 0; row < rowCount; row++) {
+            final String key = keyAt(keyColumn, row);
+            if (key == null) {
+                continue;
+            }
+            final int newKey = keys.size();
+            final int keyId = keyIds.getIfAbsentPut(key, newKey);
+            if (keyId == newKey) {
+                keys.add(key);
+                firstRows.add(row);
+                counts.add(0);
+            }
+            counts.set(keyId, counts.get(keyId) + 1);
+        }
+
+        final int capacity = Integer.highestOneBit(Math.max(2, keys.size() * 2) - 1) << 1;
+        // the key id stored in each slot, plus one so that 0 marks a free slot
+        final int[] slots = new int[capacity];
+        for (int keyId = 0; keyId < keys.size(); keyId++) {
+            int slot = hash(keys.get(keyId)) & (capacity - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = keyId + 1;
+        }
+
+        ctx.appendRow(() -> Collections.singletonList(capacity));
+        for (final int slot : slots) {
+            if (slot == 0) {
+                ctx.appendRow(Collections::emptyList);
+            } else {
+                final int keyId = slot - 1;
+                ctx.appendRow(() -> Arrays.asList(firstRows.get(keyId), counts.get(keyId)));
+            }
+        }
+    }
+
+    /**
+     * Opens an index written by {@link #build}, reading its capacity once so that each lookup only fetches the
+     * index rows it probes.
+     */
+    static KeyedIndex open(final StepProcessorContext context, final String indexName, final InputColumn keyColumn) {
+        final List<CellValue> indexRow = context.getIndexRowValues(indexName, CAPACITY_INDEX_ROW);
+        if (indexRow.isEmpty()) {
+            throw new IllegalStateException("Index row " + CAPACITY_INDEX_ROW + " must not be empty.");
+        }
+        return new KeyedIndex(context, indexName, keyColumn, indexRow.get(0).toInt());
+    }
+
+    /**
+     * Returns the input rows whose key equals {@code key}, or null if there is none.
+     */
+    Match lookup(final String key) {
+        if (key == null) {
+            return null;
+        }
+        final int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            final List<CellValue> indexRow = context.getIndexRowValues(indexName, slot + 1);
+            if (indexRow.isEmpty()) {
+                return null;
+            }
+            final long firstRow = indexRow.get(FIRST_ROW_INDEX_COLUMN).toLong();
+            if (key.equals(keyColumn.getStringValueAt(firstRow))) {
+                return new Match(firstRow, indexRow.get(COUNT_INDEX_COLUMN).toInt());
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(final String key) {
+        // spread the high bits down, since only the low bits select the slot
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
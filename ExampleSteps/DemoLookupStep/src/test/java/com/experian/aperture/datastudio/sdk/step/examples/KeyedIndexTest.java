@@ -0,0 +1,110 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.CellValue;
+import com.experian.datastudio.sdk.api.step.processor.InputColumn;
+import com.experian.datastudio.sdk.api.step.processor.RowBasedIndex;
+import com.experian.datastudio.sdk.api.step.processor.StepProcessorContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+class KeyedIndexTest {
+    private static final String INDEX_NAME = "keyindex";
+
+    private int indexReads;
+
+    @Test
+    void testLookupReturnsFirstRowAndCount() {
+        final InputColumn keys = TestColumns.of("a", "b", "a", null, "c", "a");
+        final KeyedIndex index = KeyedIndex.open(context(build(keys, 6)), INDEX_NAME, keys);
+
+        final KeyedIndex.Match a = index.lookup("a");
+        Assertions.assertEquals(0, a.getFirstRow());
+        Assertions.assertEquals(3, a.getCount());
+        Assertions.assertEquals(1, index.lookup("b").getFirstRow());
+        Assertions.assertEquals(1, index.lookup("b").getCount());
+        Assertions.assertEquals(4, index.lookup("c").getFirstRow());
+        Assertions.assertNull(index.lookup("d"));
+        // null keys are not indexed
+        Assertions.assertNull(index.lookup(null));
+    }
+
+    @Test
+    void testTableIsAtMostHalfFull() {
+        final InputColumn keys = TestColumns.of("a", "b", "c", "a", "d", "e");
+        final List<List<?>> indexRows = build(keys, 6);
+
+        final int capacity = (Integer) indexRows.get(0).get(0);
+        Assertions.assertEquals(16, capacity);
+        // the capacity row and one row per slot, holding the first row and count of the keys stored in them
+        Assertions.assertEquals(capacity + 1, indexRows.size());
+        Assertions.assertEquals(5, indexRows.stream().skip(1).filter(indexRow -> !indexRow.isEmpty()).count());
+        for (final List<?> indexRow : indexRows.subList(1, indexRows.size())) {
+            Assertions.assertTrue(indexRow.isEmpty() || indexRow.size() == 2, "Index row " + indexRow);
+        }
+    }
+
+    @Test
+    void testCollidingKeysAreProbed() {
+        // all these keys have the same hash code, so they are stored in consecutive slots
+        final InputColumn keys = TestColumns.of("AaAa", "BBBB", "AaBB", "BBBB");
+        final KeyedIndex index = KeyedIndex.open(context(build(keys, 4)), INDEX_NAME, keys);
+
+        Assertions.assertEquals(0, index.lookup("AaAa").getFirstRow());
+        Assertions.assertEquals(2, index.lookup("AaBB").getFirstRow());
+
+        indexReads = 0;
+        final KeyedIndex.Match match = index.lookup("BBBB");
+        Assertions.assertEquals(1, match.getFirstRow());
+        Assertions.assertEquals(2, match.getCount());
+        // stored in the second slot of the run, so it is found by the second probe
+        Assertions.assertEquals(2, indexReads);
+
+        // a missing key with the same hash code probes the whole run, up to the free slot after it
+        indexReads = 0;
+        Assertions.assertNull(index.lookup("BBAa"));
+        Assertions.assertEquals(4, indexReads);
+    }
+
+    /**
+     * Builds the index of the first {@code rowCount} rows of {@code keys}, and returns its rows as they would be written.
+     */
+    private static List<List<?>> build(final InputColumn keys, final int rowCount) {
+        final List<Supplier<List<?>>> suppliers = new ArrayList<>();
+        final RowBasedIndex.ValueContext ctx = (RowBasedIndex.ValueContext) Proxy.newProxyInstance(
+                KeyedIndexTest.class.getClassLoader(), new Class<?>[]{RowBasedIndex.ValueContext.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("appendRow")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    final Supplier<List<?>> supplier = (Supplier<List<?>>) args[0];
+                    suppliers.add(supplier);
+                    return null;
+                });
+        KeyedIndex.build(ctx, keys, rowCount);
+        // the rows are written in order once the index values are provided
+        return suppliers.stream().map(Supplier::get).collect(Collectors.toList());
+    }
+
+    private StepProcessorContext context(final List<List<?>> indexRows) {
+        return (StepProcessorContext) Proxy.newProxyInstance(KeyedIndexTest.class.getClassLoader(),
+                new Class<?>[]{StepProcessorContext.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("getIndexRowValues") || !INDEX_NAME.equals(args[0])) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    indexReads++;
+                    final List<CellValue> cells = new ArrayList<>();
+                    for (final Object value : indexRows.get((Integer) args[1])) {
+                        cells.add(TestColumns.cell(value));
+                    }
+                    return cells;
+                });
+    }
+}
@@ -0,0 +1,117 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests sent to an API both in rate and in concurrency, without blocking the caller.
+ *
+ * The rate is enforced with a token bucket holding a single token, refilled continuously at {@code permits} per
+ * {@code period}, so requests are spaced at least {@code period / permits} apart and no window of one period holds
+ * more than {@code permits} of them. A larger bucket would let a full burst through on top of the refill.
+ *
+ * The concurrency limit adapts between {@code minConcurrency} and {@code maxConcurrency} with additive increase,
+ * multiplicative decrease: each successful request raises it by {@code 1 / limit}, so by about one per round of
+ * requests, and each request the API pushed back on halves it.
+ *
+ * {@link #acquire()} returns a future that completes once a request may be sent, and every acquired permit
+ * must be given back with {@link #release(boolean)} once its response is received.
+ */
+final class AdaptiveRateLimiter {
+    private static final double MAX_TOKENS = 1;
+
+    private final double tokensPerNano;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final ScheduledExecutorService scheduler;
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private double concurrencyLimit;
+    private int inFlight;
+    private boolean refillScheduled;
+
+    AdaptiveRateLimiter(final int permits,
+                        final long period,
+                        final TimeUnit periodUnit,
+                        final int minConcurrency,
+                        final int maxConcurrency,
+                        final ScheduledExecutorService scheduler) {
+        if (permits < 1 || minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("Invalid limits: permits=" + permits
+                    + ", concurrency=" + minConcurrency + ".." + maxConcurrency);
+        }
+        this.tokensPerNano = permits / (double) periodUnit.toNanos(period);
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.scheduler = scheduler;
+        this.tokens = MAX_TOKENS;
+        this.concurrencyLimit = maxConcurrency;
+    }
+
+    /**
+     * Returns a future that completes, in the order of the calls, once a request may be sent.
+     */
+    CompletableFuture<Void> acquire() {
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            waiting.add(permit);
+        }
+        grant();
+        return permit;
+    }
+
+    /**
+     * Gives back a permit once the response of its request is received.
+     *
+     * @param overloaded whether the API pushed back on the request, e.g. with a 429 or 503 status
+     */
+    void release(final boolean overloaded) {
+        synchronized (this) {
+            inFlight--;
+            concurrencyLimit = overloaded
+                    ? Math.max(minConcurrency, concurrencyLimit / 2)
+                    : Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+        }
+        grant();
+    }
+
+    synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    private void grant() {
+        final List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            final long now = System.nanoTime();
+            tokens = Math.min(MAX_TOKENS, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            while (!waiting.isEmpty() && inFlight < (int) concurrencyLimit && tokens >= 1) {
+                tokens--;
+                inFlight++;
+                granted.add(waiting.poll());
+            }
+            if (!waiting.isEmpty() && inFlight < (int) concurrencyLimit && !refillScheduled) {
+                // only waiting for a token, so check again once the next one is refilled
+                refillScheduled = true;
+                final long refillNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+                scheduler.schedule(this::grantAfterRefill, refillNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        // completed outside of the lock, since completing runs the requests waiting on the permits
+        granted.forEach(permit -> permit.complete(null));
+    }
+
+    private void grantAfterRefill() {
+        synchronized (this) {
+            refillScheduled = false;
+        }
+        grant();
+    }
+}
@@ -0,0 +1,117 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * An in-memory cache bounded by a total weight, evicting the least recently used entries first.
+ *
+ * The entries are spread over lock-striped segments, each an access ordered {@link LinkedHashMap} holding
+ * an equal share of the maximum weight, so concurrent readers only contend when their keys fall in the same
+ * segment and eviction never locks the whole cache. Least recently used is therefore tracked per segment.
+ * The total weight and the number of evictions are kept in lock-free counters, so they can be read at any time.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class BoundedLruCache<K, V> {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+    private final LongAdder weight = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    BoundedLruCache(final long maximumWeight, final ToLongBiFunction<K, V> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+        }
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENT_COUNT];
+        for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+            segments[segment] = new Segment<>(Math.max(1, maximumWeight / SEGMENT_COUNT), weigher, weight, evictions);
+        }
+    }
+
+    V get(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.entries.get(key);
+        }
+    }
+
+    void put(final K key, final V value) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    void remove(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    long weight() {
+        return weight.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        final int hash = key == null ? 0 : key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Segment<K, V> {
+        private final long maximumWeight;
+        private final ToLongBiFunction<K, V> weigher;
+        private final LongAdder totalWeight;
+        private final LongAdder evictions;
+        private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        private Segment(final long maximumWeight, final ToLongBiFunction<K, V> weigher,
+                        final LongAdder totalWeight, final LongAdder evictions) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            this.totalWeight = totalWeight;
+            this.evictions = evictions;
+        }
+
+        private void put(final K key, final V value) {
+            remove(key);
+            final long entryWeight = weigher.applyAsLong(key, value);
+            if (entryWeight > maximumWeight) {
+                // an entry heavier than the whole segment would only evict everything else
+                return;
+            }
+            entries.put(key, value);
+            addWeight(entryWeight);
+            final Iterator<Map.Entry<K, V>> leastRecentlyUsed = entries.entrySet().iterator();
+            while (weight > maximumWeight) {
+                final Map.Entry<K, V> eldest = leastRecentlyUsed.next();
+                addWeight(-weigher.applyAsLong(eldest.getKey(), eldest.getValue()));
+                leastRecentlyUsed.remove();
+                evictions.increment();
+            }
+        }
+
+        private void remove(final K key) {
+            if (entries.containsKey(key)) {
+                addWeight(-weigher.applyAsLong(key, entries.remove(key)));
+            }
+        }
+
+        private void addWeight(final long delta) {
+            weight += delta;
+            totalWeight.add(delta);
+        }
+    }
+}
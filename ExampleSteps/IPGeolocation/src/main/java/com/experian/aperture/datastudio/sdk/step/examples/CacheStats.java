@@ -0,0 +1,109 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free counters of how a {@link GeolocationCache} performs: hits per tier, misses, loads and their latency,
+ * evictions from the in-memory tier and its estimated size. The counters are cumulative, so the difference of
+ * two snapshots gives the activity in between.
+ *
+ * Load latencies are counted in power of two buckets of milliseconds, the last bucket holding every slower load.
+ */
+final class CacheStats {
+    private static final int LATENCY_BUCKETS = 17;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder stepCacheHits = new LongAdder();
+    private final LongAdder persistentHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder[] loadLatencies = new LongAdder[LATENCY_BUCKETS];
+    private final LongSupplier evictions;
+    private final LongSupplier estimatedBytes;
+
+    CacheStats(final LongSupplier evictions, final LongSupplier estimatedBytes) {
+        this.evictions = evictions;
+        this.estimatedBytes = estimatedBytes;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            loadLatencies[bucket] = new LongAdder();
+        }
+    }
+
+    void recordLocalHit() {
+        localHits.increment();
+    }
+
+    void recordStepCacheHit() {
+        stepCacheHits.increment();
+    }
+
+    void recordPersistentHit() {
+        persistentHits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordLoad(final long nanos, final boolean failed) {
+        loads.increment();
+        if (failed) {
+            loadFailures.increment();
+        }
+        loadNanos.add(nanos);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        // bucket b holds the loads of less than 2^b milliseconds
+        final int bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(millis), LATENCY_BUCKETS - 1);
+        loadLatencies[bucket].increment();
+    }
+
+    long hitCount() {
+        return localHits.sum() + stepCacheHits.sum() + persistentHits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    double hitRatio() {
+        final long hits = hitCount();
+        final long requests = hits + missCount();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the latency under which {@code percentile} of the loads completed, rounded up to a power of two
+     * milliseconds, or -1 if nothing was loaded.
+     */
+    long loadLatencyPercentileMillis(final double percentile) {
+        final long total = loads.sum();
+        if (total == 0) {
+            return -1;
+        }
+        final long rank = (long) Math.ceil(percentile * total);
+        long count = 0;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            count += loadLatencies[bucket].sum();
+            if (count >= rank) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        final long loadCount = loads.sum();
+        return String.format("hitRatio=%.3f, hits[local=%d, stepCache=%d, persistent=%d], misses=%d, "
+                        + "loads=%d, loadFailures=%d, averageLoadMillis=%.1f, p50LoadMillis<=%d, p99LoadMillis<=%d, "
+                        + "evictions=%d, estimatedBytes=%d",
+                hitRatio(), localHits.sum(), stepCacheHits.sum(), persistentHits.sum(), misses.sum(),
+                loadCount, loadFailures.sum(), loadCount == 0 ? 0.0 : loadNanos.sum() / 1e6 / loadCount,
+                loadLatencyPercentileMillis(0.5), loadLatencyPercentileMillis(0.99),
+                evictions.getAsLong(), estimatedBytes.getAsLong());
+    }
+}
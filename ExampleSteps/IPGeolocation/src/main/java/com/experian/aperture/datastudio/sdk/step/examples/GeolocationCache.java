@@ -0,0 +1,334 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.cache.StepCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Geolocation results of IP addresses, kept in a {@link StepCache}.
+ * The bulk operations take a collection of distinct keys, so the cache is consulted once per IP address
+ * rather than once per row.
+ *
+ * A {@link LocalTier} in front of the step cache keeps the recently used results in memory within a fixed
+ * budget, so addresses repeated across jobs are served without going to the step cache.
+ * An optional {@link PersistentTier} behind the step cache keeps the results across server restarts.
+ *
+ * Results are loaded through {@link #getOrLoadAsync}, which coalesces concurrent misses of the same address
+ * into a single load, also across the executions of a step, which share its local tier.
+ * Negative results (an address that can not be geolocated) are only kept in the local tier.
+ *
+ * Each result carries its own expiry, see {@link Expiry}, stored with the value in the step cache and the
+ * persistent tier, so it is kept exactly as long in every tier. A result read after its refresh time is still
+ * returned, while {@link #refreshAhead} reloads it in the background, so recurring jobs over the same addresses
+ * do not all find them expired at once.
+ *
+ * Its performance is counted in the {@link CacheStats} of the local tier, which lives as long as the cache.
+ */
+final class GeolocationCache {
+    private static final char SEPARATOR = ';';
+
+    private final StepCache<String, String> cache;
+    private final LocalTier local;
+    private final PersistentTier persistent;
+    private final Expiry expiry;
+
+    /**
+     * @param persistent the persistent tier, or null to keep the results in memory only
+     */
+    GeolocationCache(final StepCache<String, String> cache,
+                     final LocalTier local,
+                     final PersistentTier persistent,
+                     final Expiry expiry) {
+        this.cache = cache;
+        this.local = local;
+        this.persistent = persistent;
+        this.expiry = expiry;
+    }
+
+    String get(final String ipAddress) {
+        final Entry entry = getEntry(ipAddress, System.currentTimeMillis(), true);
+        return entry == null ? null : entry.value;
+    }
+
+    void put(final String ipAddress, final String result) {
+        if (result == null) {
+            cache.put(ipAddress, null);
+            local.remove(ipAddress);
+            return;
+        }
+        final Entry entry = Entry.of(result, System.currentTimeMillis(), expiry.refreshAfterMillis, expiry.ttlMillis);
+        final String encoded = entry.encode();
+        cache.put(ipAddress, encoded);
+        local.put(ipAddress, entry);
+        if (persistent != null) {
+            persistent.put(ipAddress, encoded);
+        }
+    }
+
+    /**
+     * Returns the cached result of each of the given IP addresses, leaving out the ones that are not cached.
+     */
+    Map<String, String> getAll(final Collection<String> ipAddresses) {
+        final Map<String, String> results = new HashMap<>(ipAddresses.size() * 2);
+        for (final String ipAddress : ipAddresses) {
+            final String result = get(ipAddress);
+            if (result != null) {
+                results.put(ipAddress, result);
+            }
+        }
+        return results;
+    }
+
+    CacheStats stats() {
+        return local.stats;
+    }
+
+    /**
+     * Returns the cached result of an IP address, or loads it with {@code loader} if it is not cached.
+     * A load already in flight for the same address is shared rather than started again.
+     * No hit or miss is counted, since the caller has already counted one when it looked the address up
+     * with {@link #get} or {@link #getAll}. The future completes with null if the loader completes without a lookup.
+     */
+    CompletableFuture<String> getOrLoadAsync(final String ipAddress, final Function<String, CompletableFuture<Lookup>> loader) {
+        final Entry cached = getEntry(ipAddress, System.currentTimeMillis(), false);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.value);
+        }
+        return load(ipAddress, loader);
+    }
+
+    /**
+     * Reloads in the background the cached results of the given IP addresses that are past their refresh time.
+     * The cached results stay available until the reloaded ones replace them.
+     */
+    void refreshAhead(final Collection<String> ipAddresses, final Function<String, CompletableFuture<Lookup>> loader) {
+        final long now = System.currentTimeMillis();
+        for (final String ipAddress : ipAddresses) {
+            // the results were just read, so only the local tier is checked and no hit is counted again
+            final Entry entry = local.get(ipAddress, now);
+            if (entry != null && entry.refreshAt <= now && !local.inFlight.containsKey(ipAddress)) {
+                try {
+                    load(ipAddress, loader);
+                } catch (RuntimeException e) {
+                    // the cached results are still valid, so the remaining refreshes are left to the next job
+                    return;
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<String> load(final String ipAddress, final Function<String, CompletableFuture<Lookup>> loader) {
+        final CompletableFuture<String> loading = new CompletableFuture<>();
+        final CompletableFuture<String> existing = local.inFlight.putIfAbsent(ipAddress, loading);
+        if (existing != null) {
+            return existing;
+        }
+        final long loadStart = System.nanoTime();
+        try {
+            loader.apply(ipAddress).whenComplete((lookup, error) -> {
+                // a loader may complete without a lookup, e.g. for an address missing from a batch response
+                final String value = lookup == null ? null : lookup.value;
+                try {
+                    local.stats.recordLoad(System.nanoTime() - loadStart, error != null);
+                    // stored before the load leaves the in flight map, so a later miss finds it in the cache
+                    if (error == null && value != null && lookup.isFound()) {
+                        put(ipAddress, value);
+                    } else if (error == null && value != null) {
+                        // a refresh failing to geolocate the address keeps the result it found before until it expires
+                        final long now = System.currentTimeMillis();
+                        if (getEntry(ipAddress, now, false) == null) {
+                            local.put(ipAddress, Entry.of(value, now, expiry.negativeTtlMillis, expiry.negativeTtlMillis));
+                        }
+                    }
+                } finally {
+                    // a result that could not be stored is still handed to the waiting callers, it is only loaded again next time
+                    local.inFlight.remove(ipAddress, loading);
+                    if (error != null) {
+                        loading.completeExceptionally(error);
+                    } else {
+                        loading.complete(value);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the waiting callers are failed too, and the error is still raised to the caller starting the load
+            local.stats.recordLoad(System.nanoTime() - loadStart, true);
+            local.inFlight.remove(ipAddress, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        return loading;
+    }
+
+    private Entry getEntry(final String ipAddress, final long now, final boolean recordStats) {
+        Entry entry = local.get(ipAddress, now);
+        if (entry != null) {
+            if (recordStats) {
+                local.stats.recordLocalHit();
+            }
+            return entry;
+        }
+        entry = Entry.decode(cache.get(ipAddress));
+        if (entry != null && !entry.isExpired(now)) {
+            if (recordStats) {
+                local.stats.recordStepCacheHit();
+            }
+        } else if (persistent != null) {
+            entry = Entry.decode(persistent.get(ipAddress));
+            if (entry != null && !entry.isExpired(now) && recordStats) {
+                local.stats.recordPersistentHit();
+            }
+        }
+        if (entry == null || entry.isExpired(now)) {
+            if (recordStats) {
+                local.stats.recordMiss();
+            }
+            return null;
+        }
+        local.put(ipAddress, entry);
+        return entry;
+    }
+
+    /**
+     * When results expire. A result is refreshed ahead once it is older than {@code refreshAfter}, and removed once
+     * it is older than its time to live. Negative results have their own time to live and are not refreshed ahead.
+     */
+    static final class Expiry {
+        private final long ttlMillis;
+        private final long refreshAfterMillis;
+        private final long negativeTtlMillis;
+
+        Expiry(final long ttl, final long refreshAfter, final long negativeTtl, final TimeUnit unit) {
+            this.ttlMillis = unit.toMillis(ttl);
+            this.refreshAfterMillis = unit.toMillis(refreshAfter);
+            this.negativeTtlMillis = unit.toMillis(negativeTtl);
+        }
+    }
+
+    /**
+     * The result of loading an IP address: either its geolocation, or the reason it could not be geolocated.
+     */
+    static final class Lookup {
+        private final String value;
+        private final boolean found;
+
+        private Lookup(final String value, final boolean found) {
+            this.value = value;
+            this.found = found;
+        }
+
+        static Lookup found(final String value) {
+            return new Lookup(value, true);
+        }
+
+        static Lookup notFound(final String reason) {
+            return new Lookup(reason, false);
+        }
+
+        boolean isFound() {
+            return found;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * The in-memory results, bounded by their approximate heap size and evicted least recently used first.
+     * It outlives a single job, so expired results are dropped when they are read.
+     * It also keeps the statistics of the cache, since it lives as long as the cache, and the loads in flight, so the
+     * misses of overlapping executions of the step are coalesced.
+     */
+    static final class LocalTier {
+        // approximate heap size of a cached entry besides its characters, for the strings and the map entry
+        private static final long ENTRY_OVERHEAD = 128;
+
+        private final BoundedLruCache<String, Entry> results;
+        private final CacheStats stats;
+        private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+        LocalTier(final long maximumBytes) {
+            this.results = new BoundedLruCache<>(maximumBytes, LocalTier::weigh);
+            this.stats = new CacheStats(results::evictionCount, results::weight);
+        }
+
+        private Entry get(final String ipAddress, final long now) {
+            final Entry entry = results.get(ipAddress);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(now)) {
+                results.remove(ipAddress);
+                return null;
+            }
+            return entry;
+        }
+
+        private void put(final String ipAddress, final Entry entry) {
+            results.put(ipAddress, entry);
+        }
+
+        private void remove(final String ipAddress) {
+            results.remove(ipAddress);
+        }
+
+        private static long weigh(final String ipAddress, final Entry entry) {
+            return ENTRY_OVERHEAD + (long) Character.BYTES * (ipAddress.length() + entry.value.length());
+        }
+    }
+
+    /**
+     * A result with its expiry, stored in the step cache and the persistent tier as
+     * {@code refreshAt;expiresAt;value}, with the times in epoch milliseconds.
+     */
+    private static final class Entry {
+        private final String value;
+        private final long refreshAt;
+        private final long expiresAt;
+
+        private Entry(final String value, final long refreshAt, final long expiresAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+
+        private static Entry of(final String value, final long writtenAt, final long refreshAfterMillis, final long ttlMillis) {
+            return new Entry(value, writtenAt + refreshAfterMillis, writtenAt + ttlMillis);
+        }
+
+        private boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+
+        private String encode() {
+            return String.valueOf(refreshAt) + SEPARATOR + expiresAt + SEPARATOR + value;
+        }
+
+        private static Entry decode(final String encoded) {
+            if (encoded == null) {
+                return null;
+            }
+            final int refreshEnd = encoded.indexOf(SEPARATOR);
+            final int expiresEnd = encoded.indexOf(SEPARATOR, refreshEnd + 1);
+            if (refreshEnd < 0 || expiresEnd < 0) {
+                return null;
+            }
+            try {
+                return new Entry(encoded.substring(expiresEnd + 1),
+                        Long.parseLong(encoded.substring(0, refreshEnd)),
+                        Long.parseLong(encoded.substring(refreshEnd + 1, expiresEnd)));
+            } catch (NumberFormatException e) {
+                // not written by this version of the cache, treated as missing
+                return null;
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ public class IPGeolocation implements CustomStepDefinition {
     private static final String OUTPUT_ID = "output0";
     private static final String COLUMN_CHOOSER_ID = "columnchooser0";
     private static final String SETTING_ID = "setting0";
+    private static final String CACHE_DIRECTORY_SETTING_ID = "setting1";
     private static final String COLUMN_HEADER_COUNTRY_NAME = "Country Name";
 
     @Override
@@ -64,6 +65,12 @@ public class IPGeolocation implements CustomStepDefinition {
                                 .withIsRequired(true)
                                 .withFieldType(StepSettingType.TEXT)
                                 .build())
+                        .addField(customStepSettingFieldBuilder -> customStepSettingFieldBuilder
+                                .withId(CACHE_DIRECTORY_SETTING_ID)
+                                .withName("Persistent cache directory (optional, keeps results across restarts)")
+                                .withIsRequired(false)
+                                .withFieldType(StepSettingType.TEXT)
+                                .build())
                         .build())
                 .build();
     }
@@ -1,7 +1,6 @@
 package com.experian.aperture.datastudio.sdk.step.examples;
 
 import com.experian.datastudio.sdk.api.step.processor.*;
-import com.experian.datastudio.sdk.api.step.processor.cache.StepCache;
 import com.experian.datastudio.sdk.api.step.processor.cache.StepCacheConfiguration;
 import com.experian.datastudio.sdk.api.step.processor.cache.StepCacheManager;
 import com.experian.datastudio.sdk.api.step.processor.cache.StepCacheScope;
@@ -10,12 +9,17 @@ import com.experian.datastudio.sdk.lib.web.*;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.UncheckedIOException;
 import java.net.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 class IPGeolocationProcessor implements StepProcessorFunction {
@@ -24,32 +28,70 @@ class IPGeolocationProcessor implements StepProcessorFunction {
     private static final String INPUT_ID = "input0";
     private static final String COLUMN_CHOOSER_ID = "columnchooser0";
     private static final String SETTING_ID = "setting0";
+    private static final String CACHE_DIRECTORY_SETTING_ID = "setting1";
     private static final String COLUMN_HEADER_COUNTRY_NAME = "Country Name";
     private static final String CACHE_NAME = "IP Geo Cache - ";
     private static final String INVALID_IP_ADDRESS = "Invalid IP Address";
     private static final String INVALID_JSON_OBJECT = "Invalid JSON object";
     private static final String MAX_RETRIES_REACHED = "Max Retries Reached";
-    private static final String SEMAPHORE_TIMEOUT = "Semaphore Timeout";
+    private static final String REQUEST_TIMEOUT_REACHED = "Request Timeout";
     private static final String API_RETRY_TTL = "X-Ttl";
-    private static final String DEFAULT_API_RETRY_DURATION = "60";
     private static final String API_FIELDS_QUERY = "status,message,country";
+    private static final int MIN_CONCURRENT_REQUESTS = 1;
     private static final int MAX_CONCURRENT_REQUESTS = 5;
+    private static final int MAX_REQUESTS_PER_MINUTE = 15;
     private static final int MAX_TOTAL_RETRIES = 2 * MAX_CONCURRENT_REQUESTS;
-    private static final long ADD_DELAY_API_RETRY_DURATION = 5;
+    private static final int MAX_RETRIES_PER_REQUEST = 3;
+    private static final long RETRY_BASE_DELAY = 5;
+    private static final long RETRY_MAX_DELAY = 120;
     private static final long CACHE_TTL = 60;
-    private static final long SEMAPHORE_ACQUIRE_TIMEOUT = 60;
+    private static final long CACHE_REFRESH_AFTER = 45;
+    private static final long NEGATIVE_CACHE_TTL = 10;
+    private static final long LOCAL_CACHE_MAXIMUM_BYTES = 32L * 1024 * 1024;
+    private static final long REQUEST_TIMEOUT = 60;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long BATCH_LINGER = 50;
+    private static final long SCHEDULER_KEEP_ALIVE = 30;
+    private static final long PERSISTENT_CACHE_IDLE_TIMEOUT = 5;
     private static final Pattern PATTERN = Pattern.compile("^((0|1\\d?\\d?|2[0-4]?\\d?|25[0-5]?|[3-9]\\d?)\\.){3}(0|1\\d?\\d?|2[0-4]?\\d?|25[0-5]?|[3-9]\\d?)$");
 
     // Create http client object
-    private final WebHttpClient client = createWebHttpClient();
+    // One client shared by all the IP Geolocation steps, so it is configured once rather than by each step
+    private static final WebHttpClient CLIENT = createWebHttpClient();
     private final Map<String, String> queryString = new HashMap<>();
 
+    // Flushes the batches that are not filled up within BATCH_LINGER, and grants the permits waiting for the rate limit.
+    // Nothing shuts it down, so its thread stops once no task has been pending for SCHEDULER_KEEP_ALIVE, rather than
+    // keeping the classes of the step loaded after the step is unloaded.
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
     // Throttling (Configurable)
-    // No more than MAX_CONCURRENT_REQUESTS request active at any one time
-    private final Semaphore semaphore = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    // Requests are spaced evenly, one every minute / MAX_REQUESTS_PER_MINUTE, so no minute holds more than
+    // MAX_REQUESTS_PER_MINUTE of them, and between MIN_CONCURRENT_REQUESTS and MAX_CONCURRENT_REQUESTS requests
+    // are active at any one time, fewer while the API pushes back.
+    // The API limits requests per client address, so it is shared by all the IP Geolocation steps.
+    private static final AdaptiveRateLimiter RATE_LIMITER = new AdaptiveRateLimiter(MAX_REQUESTS_PER_MINUTE, 1, TimeUnit.MINUTES,
+            MIN_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, SCHEDULER);
+
+    // Failed requests are retried on the scheduler after a backoff, at least as long as the API asks for in X-Ttl
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(MAX_RETRIES_PER_REQUEST, RETRY_BASE_DELAY, RETRY_MAX_DELAY,
+            TimeUnit.SECONDS, SCHEDULER, API_RETRY_TTL);
+
+    // Single IP lookups are grouped into batch requests of up to MAX_BATCH_SIZE addresses
+    private final RequestBatcher<String, GeolocationCache.Lookup> batcher = new RequestBatcher<>(
+            MAX_BATCH_SIZE, BATCH_LINGER, TimeUnit.MILLISECONDS, this::callRestService, SCHEDULER);
+
+    // In-memory results and loads in flight kept across the jobs of this step in front of each step cache, keyed by
+    // cache name. They belong to the step, like its workflow scoped step cache, so overlapping jobs of the step
+    // send a single request per address while other workflows keep their own results and statistics.
+    private final Map<String, GeolocationCache.LocalTier> localCaches = new ConcurrentHashMap<>();
+    // Results kept on disk across server restarts, keyed by file, if a persistent cache directory is set.
+    // A file is appended to by a single tier, so it is shared by all the IP Geolocation steps.
+    // Its file is closed once it has not been used for PERSISTENT_CACHE_IDLE_TIMEOUT, and opened again on the next job.
+    private static final Map<Path, PersistentTier> PERSISTENT_CACHES = new ConcurrentHashMap<>();
 
     // Track number of retries if HTTP error code is returned
-    private int numberOfRetries = 0;
+    private final AtomicInteger numberOfRetries = new AtomicInteger();
 
     @Override
     public long execute(StepProcessorContext processorContext, OutputColumnManager outputColumnManager) {
@@ -73,7 +115,11 @@ class IPGeolocationProcessor implements StepProcessorFunction {
 
         // Get or create cache
         final StepCacheManager cacheManager = processorContext.getCacheManager();
-        final StepCache<String, String> cache = cacheManager.getOrCreateCache(cacheConfiguration);
+        final GeolocationCache.LocalTier localCache = localCaches.computeIfAbsent(cacheConfiguration.getCacheName(),
+                cacheName -> new GeolocationCache.LocalTier(LOCAL_CACHE_MAXIMUM_BYTES));
+        final GeolocationCache cache = new GeolocationCache(cacheManager.getOrCreateCache(cacheConfiguration), localCache,
+                getPersistentCache(processorContext, cacheConfiguration.getCacheName()),
+                new GeolocationCache.Expiry(CACHE_TTL, CACHE_REFRESH_AFTER, NEGATIVE_CACHE_TTL, TimeUnit.MINUTES));
         LOGGER.info("Get or create cache={}", cacheConfiguration.getCacheName());
 
         // Processor for input column
@@ -83,152 +129,202 @@ class IPGeolocationProcessor implements StepProcessorFunction {
         final List<InputColumn> columnChooserValues = processorContext.getColumnFromChooserValues(COLUMN_CHOOSER_ID);
         if (!columnChooserValues.isEmpty()) {
             final InputColumn inputColumn = columnChooserValues.get(0);
-            geolocateIp(inputColumn, cache, rowCount);
+            final Map<String, String> results = geolocateIp(inputColumn, cache, rowCount);
+            LOGGER.info("Cache statistics of cache={}: {}", cacheConfiguration.getCacheName(), cache.stats());
             outputColumnManager.onValue(COLUMN_HEADER_COUNTRY_NAME, rowIndex -> {
-                // Retrieve IP address from input column and return cached value
-                final String ipAddress = inputColumn.getStringValueAt(rowIndex);
-                return cache.get(ipAddress);
+                // Retrieve IP address from input column and return its result, resolved before the cells are evaluated
+                final String ipAddress = toIpAddress(inputColumn.getStringValueAt(rowIndex));
+                return results.get(ipAddress);
             });
         }
         return rowCount;
     }
 
-    private void geolocateIp(InputColumn inputColumn,
-                             StepCache<String, String> cache,
-                             long rowCount) {
+    private PersistentTier getPersistentCache(StepProcessorContext processorContext, String cacheName) {
+        final String directory = processorContext.getStepSettingFieldValueAsString(CACHE_DIRECTORY_SETTING_ID).orElse("");
+        if (directory.trim().isEmpty()) {
+            return null;
+        }
+        final Path file = Paths.get(directory.trim(), cacheName.replaceAll("[^A-Za-z0-9-]+", "-") + ".log")
+                .toAbsolutePath()
+                .normalize();
+        try {
+            return PERSISTENT_CACHES.computeIfAbsent(file, cacheFile -> PersistentTier.open(cacheFile, CACHE_TTL, TimeUnit.MINUTES,
+                    PERSISTENT_CACHE_IDLE_TIMEOUT, TimeUnit.MINUTES, SCHEDULER));
+        } catch (UncheckedIOException e) {
+            // The step still works without the persistent cache, it only starts cold
+            LOGGER.warn("Persistent cache is disabled: {}", e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private Map<String, String> geolocateIp(InputColumn inputColumn,
+                                            GeolocationCache cache,
+                                            long rowCount) {
 
-        // Retrieve all IP addresses from input column
+        // Retrieve the distinct IP addresses from input column, so each address is looked up only once
+        final Set<String> ipAddresses = new LinkedHashSet<>();
         for (long currentRow = 0; currentRow < rowCount; currentRow++) {
-            final String ipAddress = inputColumn.getStringValueAt(currentRow);
+            ipAddresses.add(toIpAddress(inputColumn.getStringValueAt(currentRow)));
+        }
 
-            // Get from cache (returns null if cache is empty)
-            String result = cache.get(ipAddress);
-            LOGGER.debug("Get from cache={}, key={}, value={}", CACHE_NAME, ipAddress, result);
+        // Get from cache in bulk (addresses that are not cached are left out)
+        final Map<String, String> results = new ConcurrentHashMap<>(cache.getAll(ipAddresses));
+        final Set<String> cachedResults = new HashSet<>(results.keySet());
+        LOGGER.debug("Get from cache={}, keys={}, found={}", CACHE_NAME, ipAddresses.size(), results.size());
 
-            // Get from JSON endpoint (if cache is empty)
-            if (result == null) {
-                requestCountryFromEndpoint(ipAddress, cache);
+        // Get from JSON endpoint (if not cached), concurrent misses of the same address share one request
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (final String ipAddress : ipAddresses) {
+            if (!results.containsKey(ipAddress)) {
+                pending.add(cache.getOrLoadAsync(ipAddress, this::lookupCountry)
+                        .thenAccept(value -> {
+                            if (value != null) {
+                                results.put(ipAddress, value);
+                            }
+                        })
+                        .exceptionally(e -> {
+                            // The address is left without a result, and is requested again by the next job
+                            LOGGER.debug("Lookup failed for {}: {}", ipAddress, e.getLocalizedMessage());
+                            return null;
+                        }));
             }
         }
+        // Send the last, partially filled, batch without waiting for it to linger
+        batcher.flush();
+
+        // Reload the cached results close to expiry in the background, the cached ones are used for this job.
+        // They are submitted after the misses, so the requests this job waits for are not queued behind them.
+        cache.refreshAhead(cachedResults, this::lookupCountry);
 
-        // Check if any HTTP requests are still pending
+        // Wait for the HTTP requests that are still pending
         try {
-            if (!semaphore.tryAcquire(MAX_CONCURRENT_REQUESTS, SEMAPHORE_ACQUIRE_TIMEOUT, TimeUnit.MINUTES)) {
-                // If semaphore has timed out, throw exception
-                throw new RetryException(SEMAPHORE_TIMEOUT);
-            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(REQUEST_TIMEOUT, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            // If the requests have timed out, throw exception
+            throw new RetryException(REQUEST_TIMEOUT_REACHED);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } finally {
-            semaphore.release(MAX_CONCURRENT_REQUESTS);
+        } catch (ExecutionException e) {
+            // Not reached, failed lookups are handled per address above
+            LOGGER.error(e.getLocalizedMessage(), e);
         }
+        return results;
     }
 
-    private void requestCountryFromEndpoint(final String ipAddress,
-                                            final StepCache<String, String> cache) {
-
-        // HTTP Request is made here using Aperture Data Studio's http module in sdklib
-        // CompletableFuture<WebHttpResponse>> demonstrates the ability to handle concurrent asynchronous requests
-
-        // Concurrent asynchronous requests
+    private CompletableFuture<GeolocationCache.Lookup> lookupCountry(final String ipAddress) {
         if (validIpV4(ipAddress)) {
-            // Send http request through WebHttpClient
-            callRestService(ipAddress, cache);
-        } else {
-            storeCountryInCache(cache, ipAddress, INVALID_IP_ADDRESS);
+            // Send http request through WebHttpClient, together with the other addresses of its batch
+            return batcher.submit(ipAddress);
         }
+        return CompletableFuture.completedFuture(GeolocationCache.Lookup.notFound(INVALID_IP_ADDRESS));
+    }
+
+    // HTTP Request is made here using Aperture Data Studio's http module in sdklib
+    // CompletableFuture<WebHttpResponse>> demonstrates the ability to handle concurrent asynchronous requests
+    private CompletableFuture<Map<String, GeolocationCache.Lookup>> callRestService(final List<String> ips) {
+        return callRestService(ips, 0);
     }
 
-    private void callRestService(final String ip,
-                                 final StepCache<String, String> cache) {
-        if (numberOfRetries > MAX_TOTAL_RETRIES) {
+    private CompletableFuture<Map<String, GeolocationCache.Lookup>> callRestService(final List<String> ips, final int retries) {
+        if (numberOfRetries.get() > MAX_TOTAL_RETRIES) {
             throw new RetryException(MAX_RETRIES_REACHED);
         }
-        try {
-            if (!semaphore.tryAcquire(SEMAPHORE_ACQUIRE_TIMEOUT, TimeUnit.MINUTES)) {
-                // If semaphore has timed out, throw exception
-                throw new RetryException(SEMAPHORE_TIMEOUT);
-            }
 
-            // Create http GET request object
-            final WebHttpRequest request = createWebHttpRequest(ip);
-            final CompletableFuture<WebHttpResponse> webHttpResponse = client.sendAsync(request);
-
-            webHttpResponse
-                    .thenAccept(response -> {
-                        // Retry up to MAX_RETRIES if HTTP response status code is not 200
-                        HttpStatus webHttpResponseStatus = response.getStatus().getStatus();
-                        if (webHttpResponseStatus != HttpStatus.OK) {
-                            numberOfRetries++;
-
-                            // Retrieve X-ttl from HTTP Header to determine time to wait for retrying
-                            final String xttlValue = response
-                                    .getHeaders()
-                                    .stream()
-                                    .filter(webHttpHeader -> webHttpHeader
-                                            .getKey()
-                                            .equals(API_RETRY_TTL))
-                                    .map(WebHttpHeader::getValue)
-                                    .findAny()
-                                    .orElse(DEFAULT_API_RETRY_DURATION);
-                            long retryDuration = Long.parseLong(xttlValue) + ADD_DELAY_API_RETRY_DURATION;
-                            LOGGER.info("Retry request for {} after {} seconds", ip, retryDuration);
-
-                            try {
-                                TimeUnit.SECONDS.sleep(retryDuration);
-                            } catch (InterruptedException e) {
-                                LOGGER.error(e.getLocalizedMessage(), e);
-                                Thread.currentThread().interrupt();
-                            }
-                            semaphore.release();
-                            if (numberOfRetries <= MAX_TOTAL_RETRIES) {
-                                callRestService(ip, cache);
-                            }
-                        } else {
-                            // Reset number of retries
-                            numberOfRetries = 0;
-                            semaphore.release();
-
-                            String value = extractCountryFromWebHttpResponses(response);
-                            storeCountryInCache(cache, ip, value);
-                            LOGGER.info("{}: {}", ip, value);
+        // Create http POST request object
+        final WebHttpRequest request = createWebHttpRequest(ips);
+        final CompletableFuture<WebHttpResponse> webHttpResponse = sendWithinRateLimit(request);
+
+        return webHttpResponse
+                .thenCompose(response -> {
+                    // Retry up to MAX_RETRIES_PER_REQUEST if HTTP response status code is not 200
+                    HttpStatus webHttpResponseStatus = response.getStatus().getStatus();
+                    if (webHttpResponseStatus != HttpStatus.OK) {
+                        numberOfRetries.incrementAndGet();
+                        // The API pushed back, so fewer requests are sent concurrently from now on
+                        RATE_LIMITER.release(true);
+                        if (!RETRY_POLICY.canRetry(retries)) {
+                            throw new RetryException(MAX_RETRIES_REACHED);
                         }
-                    });
-        } catch (InterruptedException e) {
-            LOGGER.error(e.getLocalizedMessage(), e);
-            Thread.currentThread().interrupt();
-        }
+
+                        // Retry-After or X-Ttl from HTTP Header determine the least time to wait for retrying
+                        final long retryDelay = RETRY_POLICY.delayMillis(retries + 1, name -> response
+                                .getHeaders()
+                                .stream()
+                                .filter(webHttpHeader -> webHttpHeader
+                                        .getKey()
+                                        .equalsIgnoreCase(name))
+                                .map(WebHttpHeader::getValue)
+                                .findAny()
+                                .orElse(null));
+                        LOGGER.info("Retry request for {} addresses after {} ms", ips.size(), retryDelay);
+
+                        // The wait is scheduled on a timer, so no thread is held while waiting
+                        return RETRY_POLICY.retryAfter(retryDelay, () -> callRestService(ips, retries + 1));
+                    } else {
+                        // Reset number of retries
+                        numberOfRetries.set(0);
+                        RATE_LIMITER.release(false);
+
+                        final Map<String, GeolocationCache.Lookup> lookups = extractCountryFromWebHttpResponses(ips, response);
+                        LOGGER.info("{}", lookups);
+                        return CompletableFuture.completedFuture(lookups);
+                    }
+                });
     }
 
-    private String extractCountryFromWebHttpResponses(WebHttpResponse webHttpResponse) {
+    private CompletableFuture<WebHttpResponse> sendWithinRateLimit(final WebHttpRequest request) {
+        // Wait for a permit without blocking, the permit is released once the response is handled
+        return RATE_LIMITER.acquire().thenCompose(permit -> {
+            try {
+                return CLIENT.sendAsync(request).whenComplete((response, error) -> {
+                    if (error != null) {
+                        RATE_LIMITER.release(true);
+                    }
+                });
+            } catch (RuntimeException e) {
+                RATE_LIMITER.release(true);
+                throw e;
+            }
+        });
+    }
+
+    private Map<String, GeolocationCache.Lookup> extractCountryFromWebHttpResponses(List<String> ips, WebHttpResponse webHttpResponse) {
+        final Map<String, GeolocationCache.Lookup> lookups = new HashMap<>(ips.size() * 2);
         try {
             String webHttpResponseBody = webHttpResponse.getBody();
-            JSONObject jsonObject = new JSONObject(webHttpResponseBody);
-            String countryName = (String) jsonObject.opt("country");
-            String errorMessage = StringUtils.capitalize((String) jsonObject.opt("message"));
-            return (countryName != null) ? countryName : errorMessage;
+            // The batch response holds one object per address, in the order of the request
+            JSONArray jsonArray = new JSONArray(webHttpResponseBody);
+            for (int i = 0; i < ips.size(); i++) {
+                JSONObject jsonObject = jsonArray.optJSONObject(i);
+                if (jsonObject == null) {
+                    lookups.put(ips.get(i), GeolocationCache.Lookup.notFound(INVALID_JSON_OBJECT));
+                    continue;
+                }
+                String countryName = (String) jsonObject.opt("country");
+                String errorMessage = StringUtils.capitalize((String) jsonObject.opt("message"));
+                lookups.put(ips.get(i), (countryName != null) ? GeolocationCache.Lookup.found(countryName) : GeolocationCache.Lookup.notFound(errorMessage));
+            }
         } catch (JSONException e) {
             LOGGER.error(e.getLocalizedMessage(), e);
-            return INVALID_JSON_OBJECT;
+            ips.forEach(ip -> lookups.put(ip, GeolocationCache.Lookup.notFound(INVALID_JSON_OBJECT)));
         }
+        return lookups;
     }
 
-    private void storeCountryInCache(StepCache<String, String> cache, String cacheKey, String result) {
-        cache.put(cacheKey, result);
-    }
-
-    private WebHttpRequest createWebHttpRequest(String ip) {
-        // IP Geolocation - JSON endpoint
-        // Source: https://ip-api.com/docs/api:json
-        // Max requests per minute: 45/minute
+    private WebHttpRequest createWebHttpRequest(List<String> ips) {
+        // IP Geolocation - Batch JSON endpoint, up to 100 addresses per request
+        // Source: https://ip-api.com/docs/api:batch
+        // Max requests per minute: 15/minute
         return WebHttpRequest
                 .builder()
-                .get("http://ip-api.com/json/" + ip)
+                .post("http://ip-api.com/batch")
+                .withBody(new JSONArray(ips).toString())
                 .withQueryString(queryString)
                 .build();
     }
 
-    private WebHttpClient createWebHttpClient() {
+    private static WebHttpClient createWebHttpClient() {
         return WebHttpClient
                 .builder()
                 .withHttpVersion(HttpVersion.HTTP1_1)
@@ -238,6 +334,22 @@ class IPGeolocationProcessor implements StepProcessorFunction {
                 .build();
     }
 
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "ip-geolocation-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setKeepAliveTime(SCHEDULER_KEEP_ALIVE, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    private static String toIpAddress(final String cellValue) {
+        // a missing cell is treated as an empty, and therefore invalid, IP address
+        return cellValue == null ? "" : cellValue;
+    }
+
     private boolean validIpV4(final String ip) {
         if (ip == null || ip.isEmpty()) {
             return false;
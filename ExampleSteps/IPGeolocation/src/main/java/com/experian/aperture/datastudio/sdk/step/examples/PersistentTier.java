@@ -0,0 +1,292 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * String results kept in an append-only file, so they survive a restart of the server.
+ *
+ * Each put appends a record {@code [length, writtenAt, key, value]} to the file, and an in-memory index maps
+ * each key to the offset of its latest record, so a get is a single positional read. The file is replayed
+ * into the index when it is opened, skipping expired records and dropping a partially written last record.
+ *
+ * The file is compacted to its live records, dropping the expired ones from the file and the index, when it is
+ * opened and most of its records are outdated, and by a put once most of its records are outdated or a time to
+ * live has passed since the last compaction. So neither the file nor the index outgrows the records written
+ * within about two times to live. Accesses are serialized, so a compaction does not race a read or a write.
+ *
+ * The file is opened on first access and closed again once it has not been accessed for an idle timeout.
+ *
+ * A record expires a time to live after it was written, using the wall clock so the age of a record is
+ * kept across restarts.
+ */
+final class PersistentTier {
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    // outdated records left before a put compacts the file, so a small file is not rewritten on every put
+    private static final int MIN_OUTDATED_RECORDS = 1024;
+
+    private final Path file;
+    private final long ttlMillis;
+    private final long idleNanos;
+    private final ScheduledExecutorService scheduler;
+    private Map<String, Long> offsets = new HashMap<>();
+    private FileChannel channel;
+    private long end;
+    private int records;
+    private long compactedAt;
+    private long lastUsedAt;
+    private boolean closeScheduled;
+
+    private PersistentTier(final Path file,
+                           final long ttlMillis,
+                           final long idleNanos,
+                           final ScheduledExecutorService scheduler) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.idleNanos = idleNanos;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Opens the file, creating it and its directory if they do not exist.
+     *
+     * @param scheduler closes the file once it has been idle for {@code idleTimeout}
+     */
+    static PersistentTier open(final Path file,
+                               final long ttl,
+                               final TimeUnit ttlUnit,
+                               final long idleTimeout,
+                               final TimeUnit idleUnit,
+                               final ScheduledExecutorService scheduler) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            final PersistentTier tier = new PersistentTier(file, ttlUnit.toMillis(ttl), idleUnit.toNanos(idleTimeout), scheduler);
+            synchronized (tier) {
+                tier.replay();
+                if (tier.records > 2 * tier.offsets.size()) {
+                    tier.compact();
+                }
+            }
+            return tier;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the persistent cache " + file, e);
+        }
+    }
+
+    synchronized String get(final String key) {
+        final Long offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            final Record record = read(channel(), offset);
+            if (record.isExpired(ttlMillis)) {
+                offsets.remove(key);
+                return null;
+            }
+            return record.value;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the persistent cache", e);
+        }
+    }
+
+    synchronized void put(final String key, final String value) {
+        final ByteBuffer record = encode(new Record(System.currentTimeMillis(), key, value));
+        try {
+            final FileChannel target = channel();
+            final long offset = end;
+            while (record.hasRemaining()) {
+                target.write(record, end + record.position());
+            }
+            end += record.limit();
+            records++;
+            offsets.put(key, offset);
+            final int outdated = records - offsets.size();
+            if (outdated > Math.max(offsets.size(), MIN_OUTDATED_RECORDS)
+                    || System.currentTimeMillis() - compactedAt >= ttlMillis) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the persistent cache", e);
+        }
+    }
+
+    /**
+     * Whether the file is open, that is it has been accessed within the idle timeout.
+     */
+    synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    private FileChannel channel() throws IOException {
+        lastUsedAt = System.nanoTime();
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            scheduleClose(idleNanos);
+        }
+        return channel;
+    }
+
+    private void scheduleClose(final long delayNanos) {
+        if (!closeScheduled) {
+            scheduler.schedule(this::closeIfIdle, delayNanos, TimeUnit.NANOSECONDS);
+            closeScheduled = true;
+        }
+    }
+
+    private synchronized void closeIfIdle() {
+        closeScheduled = false;
+        if (channel == null) {
+            return;
+        }
+        final long idle = System.nanoTime() - lastUsedAt;
+        if (idle >= idleNanos) {
+            close();
+        } else {
+            scheduleClose(idleNanos - idle);
+        }
+    }
+
+    private void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the records are written with positional writes, so there is nothing left to flush and the channel is released anyway
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Rebuilds the index from the file, counting the complete records found.
+     */
+    private void replay() throws IOException {
+        // opened first, so a missing file is created
+        final FileChannel source = channel();
+        long offset = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                final Record record;
+                final int length;
+                try {
+                    length = input.readInt();
+                    record = decode(input);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (!record.isExpired(ttlMillis)) {
+                    offsets.put(record.key, offset);
+                } else {
+                    offsets.remove(record.key);
+                }
+                offset += LENGTH_BYTES + length;
+                records++;
+            }
+        }
+        // drop a record left partially written by a crash, so the next record is appended right after the last complete one
+        source.truncate(offset);
+        end = offset;
+        compactedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Rewrites the file with the latest record of each key that has not expired, and replaces the index with theirs.
+     */
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        final Map<String, Long> compactedOffsets = new HashMap<>(offsets.size() * 2);
+        long offset = 0;
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final FileChannel source = channel();
+            for (final Map.Entry<String, Long> entry : offsets.entrySet()) {
+                final Record record = read(source, entry.getValue());
+                if (record.isExpired(ttlMillis)) {
+                    continue;
+                }
+                final ByteBuffer buffer = encode(record);
+                compactedOffsets.put(entry.getKey(), offset);
+                offset += buffer.limit();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+        }
+        // the file is replaced while it is closed, which some platforms require, and reopened on the next access
+        close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        offsets = compactedOffsets;
+        records = compactedOffsets.size();
+        end = offset;
+        compactedAt = System.currentTimeMillis();
+    }
+
+    private static Record read(final FileChannel channel, final long offset) throws IOException {
+        final ByteBuffer length = ByteBuffer.allocate(LENGTH_BYTES);
+        readFully(channel, length, offset);
+        final ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(channel, record, offset + LENGTH_BYTES);
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record.array()))) {
+            return decode(input);
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated record at " + offset);
+            }
+        }
+    }
+
+    private static ByteBuffer encode(final Record record) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(0);
+            output.writeLong(record.writtenAt);
+            output.writeUTF(record.key);
+            output.writeUTF(record.value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.limit() - LENGTH_BYTES);
+        return buffer;
+    }
+
+    private static Record decode(final DataInputStream input) throws IOException {
+        return new Record(input.readLong(), input.readUTF(), input.readUTF());
+    }
+
+    private static final class Record {
+        private final long writtenAt;
+        private final String key;
+        private final String value;
+
+        private Record(final long writtenAt, final String key, final String value) {
+            this.writtenAt = writtenAt;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean isExpired(final long ttlMillis) {
+            return System.currentTimeMillis() - writtenAt >= ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Groups single key requests into batches for an endpoint that accepts many keys in one request.
+ *
+ * A batch is sent once it holds {@code maxBatchSize} keys, or {@code linger} after its first key was submitted,
+ * whichever comes first, and {@link #flush()} sends the pending batch at once. The response of a batch is fanned
+ * back out to the future of each of its keys. A key missing from the response completes with null, and a failed
+ * batch fails the futures of all its keys.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+final class RequestBatcher<K, V> {
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Function<List<K>, CompletableFuture<Map<K, V>>> batchLoader;
+    private final ScheduledExecutorService scheduler;
+
+    private List<K> pendingKeys = new ArrayList<>();
+    private List<CompletableFuture<V>> pendingResults = new ArrayList<>();
+    private ScheduledFuture<?> lingerFlush;
+
+    RequestBatcher(final int maxBatchSize,
+                   final long linger,
+                   final TimeUnit lingerUnit,
+                   final Function<List<K>, CompletableFuture<Map<K, V>>> batchLoader,
+                   final ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = lingerUnit.toNanos(linger);
+        this.batchLoader = batchLoader;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds a key to the pending batch, and returns the future of its result.
+     */
+    CompletableFuture<V> submit(final K key) {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final boolean full;
+        synchronized (this) {
+            pendingKeys.add(key);
+            pendingResults.add(result);
+            full = pendingKeys.size() >= maxBatchSize;
+            if (!full && pendingKeys.size() == 1) {
+                lingerFlush = scheduler.schedule(this::flushAfterLinger, lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Sends the pending batch, if any, without waiting for it to fill up.
+     * An error raised while sending is rethrown, after failing the futures of the batch.
+     */
+    void flush() {
+        final List<K> keys;
+        final List<CompletableFuture<V>> results;
+        synchronized (this) {
+            if (pendingKeys.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            results = pendingResults;
+            pendingKeys = new ArrayList<>();
+            pendingResults = new ArrayList<>();
+            if (lingerFlush != null) {
+                lingerFlush.cancel(false);
+                lingerFlush = null;
+            }
+        }
+        try {
+            batchLoader.apply(keys).whenComplete((batch, error) -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    if (error != null) {
+                        results.get(i).completeExceptionally(error);
+                    } else {
+                        results.get(i).complete(batch.get(keys.get(i)));
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            results.forEach(result -> result.completeExceptionally(e));
+            throw e;
+        }
+    }
+
+    private void flushAfterLinger() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // the futures of the batch are already failed with the error, there is no caller to raise it to
+        }
+    }
+}
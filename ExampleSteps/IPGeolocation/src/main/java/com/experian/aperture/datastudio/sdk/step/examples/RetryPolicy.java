@@ -0,0 +1,121 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * When to retry a request the API pushed back on, and running the retry once the wait is over without blocking
+ * a thread in between.
+ *
+ * The wait before retry {@code n}, counted from 1, is exponential backoff with full jitter: drawn uniformly between
+ * zero and {@code baseDelay * 2^(n - 1)}, capped at {@code maxDelay}, so the requests rejected together do not all
+ * retry together. When the response says how long to wait, in a {@code Retry-After} header or in one of the
+ * {@code delayHeaders} holding seconds, the jittered backoff is added on top of that wait.
+ */
+final class RetryPolicy {
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final String[] delayHeaders;
+
+    RetryPolicy(final int maxRetries,
+                final long baseDelay,
+                final long maxDelay,
+                final TimeUnit delayUnit,
+                final ScheduledExecutorService scheduler,
+                final String... delayHeaders) {
+        if (maxRetries < 0 || baseDelay <= 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid retries: maxRetries=" + maxRetries
+                    + ", delay=" + baseDelay + ".." + maxDelay);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = delayUnit.toMillis(baseDelay);
+        this.maxDelayMillis = delayUnit.toMillis(maxDelay);
+        this.scheduler = scheduler;
+        this.delayHeaders = delayHeaders.clone();
+    }
+
+    /**
+     * Whether a request already retried {@code retries} times may be retried again.
+     */
+    boolean canRetry(final int retries) {
+        return retries < maxRetries;
+    }
+
+    /**
+     * Returns the wait in milliseconds before the given retry, counted from 1.
+     *
+     * @param headers the value of a response header by name, or null if the response does not have it
+     */
+    long delayMillis(final int retry, final Function<String, String> headers) {
+        long backoff = baseDelayMillis;
+        for (int doubling = 1; doubling < retry && backoff < maxDelayMillis; doubling++) {
+            backoff <<= 1;
+        }
+        backoff = Math.min(backoff, maxDelayMillis);
+        return requestedDelayMillis(headers) + ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    /**
+     * Runs {@code retry} once {@code delayMillis} have passed, and returns a future completed with its outcome.
+     */
+    <T> CompletableFuture<T> retryAfter(final long delayMillis, final Supplier<CompletableFuture<T>> retry) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            try {
+                retry.get().whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private long requestedDelayMillis(final Function<String, String> headers) {
+        long delayMillis = parseRetryAfter(headers.apply(RETRY_AFTER));
+        for (final String delayHeader : delayHeaders) {
+            delayMillis = Math.max(delayMillis, parseSeconds(headers.apply(delayHeader)));
+        }
+        return delayMillis;
+    }
+
+    private static long parseRetryAfter(final String value) {
+        // either a number of seconds, or the date to retry after
+        if (value == null || value.trim().isEmpty() || Character.isDigit(value.trim().charAt(0))) {
+            return parseSeconds(value);
+        }
+        try {
+            final ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, retryAt.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static long parseSeconds(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class AdaptiveRateLimiterTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testRequestsAreSpacedWithoutInitialBurst() {
+        final long start = System.nanoTime();
+        final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(3, 300, TimeUnit.MILLISECONDS, 1, 5, scheduler);
+        final List<CompletableFuture<Long>> grants = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            grants.add(limiter.acquire().thenApply(permit -> {
+                limiter.release(false);
+                return System.nanoTime();
+            }));
+        }
+
+        for (int i = 1; i < grants.size(); i++) {
+            final long granted = grants.get(i).join() - start;
+            // one permit every 100 ms from the start, measured from there since the time a permit is noted at lags
+            // behind its grant, allowing for the rounding of the refill time
+            Assertions.assertTrue(granted >= TimeUnit.MILLISECONDS.toNanos(100L * i - 1),
+                    "Permit " + i + " granted after " + granted + " ns");
+        }
+    }
+
+    @Test
+    void testPushBackHalvesConcurrency() {
+        final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1000, 1, TimeUnit.SECONDS, 1, 4, scheduler);
+        Assertions.assertEquals(4, limiter.getConcurrencyLimit());
+
+        limiter.acquire().join();
+        limiter.release(true);
+        Assertions.assertEquals(2, limiter.getConcurrencyLimit());
+
+        limiter.acquire().join();
+        limiter.release(true);
+        limiter.acquire().join();
+        limiter.release(true);
+        Assertions.assertEquals(1, limiter.getConcurrencyLimit());
+    }
+}
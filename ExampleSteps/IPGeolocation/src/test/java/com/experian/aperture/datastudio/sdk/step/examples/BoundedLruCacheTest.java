@@ -0,0 +1,54 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BoundedLruCacheTest {
+    // the cache has 16 segments, and integer keys that are multiples of 16 all fall in the first one
+    private static final int SEGMENTS = 16;
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        final BoundedLruCache<Integer, String> cache = new BoundedLruCache<>(3 * SEGMENTS, (key, value) -> 1);
+        cache.put(0, "a");
+        cache.put(16, "b");
+        cache.put(32, "c");
+        // read, so it is now the most recently used
+        Assertions.assertEquals("a", cache.get(0));
+
+        cache.put(48, "d");
+
+        Assertions.assertNull(cache.get(16));
+        Assertions.assertEquals("a", cache.get(0));
+        Assertions.assertEquals("c", cache.get(32));
+        Assertions.assertEquals("d", cache.get(48));
+        Assertions.assertEquals(1, cache.evictionCount());
+        Assertions.assertEquals(3, cache.weight());
+    }
+
+    @Test
+    void testTracksWeights() {
+        final BoundedLruCache<Integer, Integer> cache = new BoundedLruCache<>(10 * SEGMENTS, (key, value) -> value);
+        cache.put(0, 4);
+        cache.put(16, 4);
+        Assertions.assertEquals(8, cache.weight());
+
+        // replacing an entry replaces its weight
+        cache.put(16, 2);
+        Assertions.assertEquals(6, cache.weight());
+
+        // heavier than the whole segment, so it is not kept and nothing is evicted for it
+        cache.put(32, 11);
+        Assertions.assertNull(cache.get(32));
+        Assertions.assertEquals(6, cache.weight());
+        Assertions.assertEquals(0, cache.evictionCount());
+
+        cache.put(48, 7);
+        Assertions.assertNull(cache.get(0));
+        Assertions.assertEquals(9, cache.weight());
+        Assertions.assertEquals(1, cache.evictionCount());
+
+        cache.remove(16);
+        Assertions.assertEquals(7, cache.weight());
+    }
+}
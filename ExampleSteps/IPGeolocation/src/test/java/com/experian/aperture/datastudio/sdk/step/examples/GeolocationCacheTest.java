@@ -0,0 +1,154 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import com.experian.datastudio.sdk.api.step.processor.cache.StepCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class GeolocationCacheTest {
+    private static final GeolocationCache.Expiry EXPIRY = new GeolocationCache.Expiry(60, 45, 10, TimeUnit.MINUTES);
+
+    @Test
+    void testLoadOfMissCountsOneMiss() {
+        final GeolocationCache cache = newCache(new GeolocationCache.LocalTier(1024 * 1024));
+
+        Assertions.assertTrue(cache.getAll(Arrays.asList("1.1.1.1", "8.8.8.8")).isEmpty());
+        cache.getOrLoadAsync("1.1.1.1", ip -> CompletableFuture.completedFuture(GeolocationCache.Lookup.found("Australia")));
+        cache.getOrLoadAsync("8.8.8.8", ip -> CompletableFuture.completedFuture(GeolocationCache.Lookup.found("United States")));
+
+        Assertions.assertEquals(2, cache.stats().missCount());
+        Assertions.assertEquals(0, cache.stats().hitCount());
+        Assertions.assertEquals("Australia", cache.get("1.1.1.1"));
+        Assertions.assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    void testOverlappingLoadsShareOneLoad() {
+        // two overlapping executions of a step share its local tier, but each has its own cache
+        final GeolocationCache.LocalTier local = new GeolocationCache.LocalTier(1024 * 1024);
+        final GeolocationCache first = newCache(local);
+        final GeolocationCache second = newCache(local);
+        final CompletableFuture<GeolocationCache.Lookup> response = new CompletableFuture<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final Function<String, CompletableFuture<GeolocationCache.Lookup>> loader = ip -> {
+            loads.incrementAndGet();
+            return response;
+        };
+
+        final CompletableFuture<String> firstResult = first.getOrLoadAsync("1.1.1.1", loader);
+        final CompletableFuture<String> secondResult = second.getOrLoadAsync("1.1.1.1", loader);
+        response.complete(GeolocationCache.Lookup.found("Australia"));
+
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals("Australia", firstResult.join());
+        Assertions.assertEquals("Australia", secondResult.join());
+    }
+
+    @Test
+    void testLoadCompletesWhenResultCannotBeStored() {
+        final GeolocationCache cache = new GeolocationCache(new MapStepCache(true), new GeolocationCache.LocalTier(1024 * 1024),
+                null, EXPIRY);
+        final AtomicInteger loads = new AtomicInteger();
+        final Function<String, CompletableFuture<GeolocationCache.Lookup>> loader = ip -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(GeolocationCache.Lookup.found("Australia"));
+        };
+
+        Assertions.assertEquals("Australia", cache.getOrLoadAsync("1.1.1.1", loader).join());
+        // the failed load is no longer in flight, so the next miss loads the address again
+        Assertions.assertEquals("Australia", cache.getOrLoadAsync("1.1.1.1", loader).join());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testLoadWithoutLookupCompletesWithNull() {
+        final GeolocationCache cache = newCache(new GeolocationCache.LocalTier(1024 * 1024));
+        final AtomicInteger loads = new AtomicInteger();
+        // as the batcher does for an address missing from the batch response
+        final Function<String, CompletableFuture<GeolocationCache.Lookup>> loader = ip -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        };
+
+        Assertions.assertNull(cache.getOrLoadAsync("1.1.1.1", loader).join());
+        // nothing is cached and the load is no longer in flight, so the next miss loads the address again
+        Assertions.assertNull(cache.get("1.1.1.1"));
+        Assertions.assertNull(cache.getOrLoadAsync("1.1.1.1", loader).join());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testRefreshNotFoundKeepsFoundResult() {
+        // refreshed ahead as soon as it is read
+        final GeolocationCache cache = new GeolocationCache(new MapStepCache(false), new GeolocationCache.LocalTier(1024 * 1024),
+                null, new GeolocationCache.Expiry(60, 0, 10, TimeUnit.MINUTES));
+        cache.getOrLoadAsync("1.1.1.1", ip -> CompletableFuture.completedFuture(GeolocationCache.Lookup.found("Australia")));
+
+        final AtomicInteger refreshes = new AtomicInteger();
+        cache.refreshAhead(Arrays.asList("1.1.1.1"), ip -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(GeolocationCache.Lookup.notFound("reserved range"));
+        });
+
+        Assertions.assertEquals(1, refreshes.get());
+        Assertions.assertEquals("Australia", cache.get("1.1.1.1"));
+    }
+
+    private static GeolocationCache newCache(final GeolocationCache.LocalTier local) {
+        return new GeolocationCache(new MapStepCache(false), local, null, EXPIRY);
+    }
+
+    private static final class MapStepCache implements StepCache<String, String> {
+        private final Map<String, String> values = new HashMap<>();
+        private final boolean failPuts;
+
+        private MapStepCache(final boolean failPuts) {
+            this.failPuts = failPuts;
+        }
+
+        @Override
+        public synchronized String get(final String key) {
+            return values.get(key);
+        }
+
+        @Override
+        public synchronized void put(final String key, final String value) {
+            if (failPuts) {
+                throw new IllegalStateException("The cache is closed");
+            }
+            values.put(key, value);
+        }
+
+        @Override
+        public synchronized boolean remove(final String key) {
+            return values.remove(key) != null;
+        }
+
+        @Override
+        public synchronized boolean containsKey(final String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public synchronized void clear() {
+            values.clear();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+    }
+}
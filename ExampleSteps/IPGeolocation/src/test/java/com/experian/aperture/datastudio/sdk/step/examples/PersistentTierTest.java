@@ -0,0 +1,139 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class PersistentTierTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testReopenKeepsResults() {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = open(file, 60, TimeUnit.MINUTES);
+        tier.put("1.1.1.1", "Australia");
+        tier.put("8.8.8.8", "United States");
+
+        final PersistentTier reopened = open(file, 60, TimeUnit.MINUTES);
+        Assertions.assertEquals("Australia", reopened.get("1.1.1.1"));
+        Assertions.assertEquals("United States", reopened.get("8.8.8.8"));
+        Assertions.assertNull(reopened.get("9.9.9.9"));
+    }
+
+    @Test
+    void testReplayDropsTornTail() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        open(file, 60, TimeUnit.MINUTES).put("1.1.1.1", "Australia");
+        final long complete = Files.size(file);
+
+        // the first bytes of a second record, as left by a crash in the middle of a put
+        final byte[] record = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(record, record.length / 2), StandardOpenOption.APPEND);
+
+        final PersistentTier reopened = open(file, 60, TimeUnit.MINUTES);
+        Assertions.assertEquals(complete, Files.size(file));
+        Assertions.assertEquals("Australia", reopened.get("1.1.1.1"));
+
+        // a record appended after the replay is readable once the file is opened again
+        reopened.put("8.8.8.8", "United States");
+        final PersistentTier replayed = open(file, 60, TimeUnit.MINUTES);
+        Assertions.assertEquals("Australia", replayed.get("1.1.1.1"));
+        Assertions.assertEquals("United States", replayed.get("8.8.8.8"));
+    }
+
+    @Test
+    void testExpiredRecordsAreNotReturned() throws InterruptedException {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = open(file, 50, TimeUnit.MILLISECONDS);
+        tier.put("1.1.1.1", "Australia");
+        Assertions.assertEquals("Australia", tier.get("1.1.1.1"));
+
+        Thread.sleep(100);
+        Assertions.assertNull(tier.get("1.1.1.1"));
+        Assertions.assertNull(open(file, 50, TimeUnit.MILLISECONDS).get("1.1.1.1"));
+    }
+
+    @Test
+    void testOpenCompactsOutdatedRecords() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = open(file, 60, TimeUnit.MINUTES);
+        tier.put("1.1.1.1", "Australia");
+        final long oneRecord = Files.size(file);
+        for (int i = 0; i < 4; i++) {
+            tier.put("8.8.8.8", "Country " + i);
+        }
+
+        final PersistentTier compacted = open(file, 60, TimeUnit.MINUTES);
+        Assertions.assertEquals("Australia", compacted.get("1.1.1.1"));
+        Assertions.assertEquals("Country 3", compacted.get("8.8.8.8"));
+        // only the latest record of each key is left, and both records have keys and values of the same length
+        Assertions.assertEquals(2 * oneRecord, Files.size(file));
+        Assertions.assertFalse(Files.exists(file.resolveSibling("cache.log.compact")));
+    }
+
+    @Test
+    void testPutCompactsOutdatedRecords() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = open(file, 60, TimeUnit.MINUTES);
+        tier.put("1.1.1.1", "Country 0");
+        final long oneRecord = Files.size(file);
+        for (int i = 1; i < 2000; i++) {
+            tier.put("1.1.1.1", "Country " + i % 10);
+        }
+
+        Assertions.assertEquals("Country 9", tier.get("1.1.1.1"));
+        // compacted once more than 1024 records were outdated, so only the records put since then are left
+        Assertions.assertTrue(Files.size(file) < 1024 * oneRecord, "File of " + Files.size(file) + " bytes");
+        Assertions.assertFalse(Files.exists(file.resolveSibling("cache.log.compact")));
+    }
+
+    @Test
+    void testPutPrunesExpiredRecords() throws IOException, InterruptedException {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = open(file, 50, TimeUnit.MILLISECONDS);
+        tier.put("1.1.1.1", "Australia");
+        final long oneRecord = Files.size(file);
+
+        // a time to live after the file was opened, the next put compacts it without the expired record
+        Thread.sleep(100);
+        tier.put("8.8.8.8", "Australia");
+        Assertions.assertEquals(oneRecord, Files.size(file));
+        Assertions.assertNull(tier.get("1.1.1.1"));
+        Assertions.assertEquals("Australia", tier.get("8.8.8.8"));
+    }
+
+    @Test
+    void testIdleFileIsClosedAndReopened() throws InterruptedException {
+        final Path file = directory.resolve("cache.log");
+        final PersistentTier tier = PersistentTier.open(file, 60, TimeUnit.MINUTES, 50, TimeUnit.MILLISECONDS, scheduler);
+        tier.put("1.1.1.1", "Australia");
+        Assertions.assertTrue(tier.isOpen());
+
+        Thread.sleep(300);
+        Assertions.assertFalse(tier.isOpen());
+        Assertions.assertEquals("Australia", tier.get("1.1.1.1"));
+        Assertions.assertTrue(tier.isOpen());
+    }
+
+    private PersistentTier open(final Path file, final long ttl, final TimeUnit ttlUnit) {
+        return PersistentTier.open(file, ttl, ttlUnit, 1, TimeUnit.MINUTES, scheduler);
+    }
+}
@@ -0,0 +1,105 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class RequestBatcherTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testFullBatchIsSentAtOnce() {
+        final RequestBatcher<String, String> batcher = new RequestBatcher<>(2, 1, TimeUnit.HOURS, this::upperCase, scheduler);
+
+        final CompletableFuture<String> first = batcher.submit("a");
+        final CompletableFuture<String> second = batcher.submit("b");
+        final CompletableFuture<String> third = batcher.submit("c");
+
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batches);
+        Assertions.assertEquals("A", first.join());
+        Assertions.assertEquals("B", second.join());
+        Assertions.assertFalse(third.isDone());
+
+        batcher.flush();
+        Assertions.assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("c")), batches);
+        Assertions.assertEquals("C", third.join());
+    }
+
+    @Test
+    void testPartialBatchIsSentAfterLinger() {
+        final RequestBatcher<String, String> batcher = new RequestBatcher<>(10, 20, TimeUnit.MILLISECONDS, this::upperCase, scheduler);
+
+        final CompletableFuture<String> first = batcher.submit("a");
+        final CompletableFuture<String> second = batcher.submit("b");
+
+        Assertions.assertEquals("A", first.join());
+        Assertions.assertEquals("B", second.join());
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batches);
+    }
+
+    @Test
+    void testKeyMissingFromResponseCompletesWithNull() {
+        final RequestBatcher<String, String> batcher = new RequestBatcher<>(10, 1, TimeUnit.HOURS,
+                keys -> CompletableFuture.completedFuture(Collections.singletonMap("a", "A")), scheduler);
+
+        final CompletableFuture<String> missing = batcher.submit("b");
+        batcher.flush();
+
+        Assertions.assertNull(missing.join());
+    }
+
+    @Test
+    void testFailedBatchFailsEveryKey() {
+        final IllegalStateException failure = new IllegalStateException("Service unavailable");
+        final CompletableFuture<Map<String, String>> response = new CompletableFuture<>();
+        final RequestBatcher<String, String> batcher = new RequestBatcher<>(10, 1, TimeUnit.HOURS, keys -> response, scheduler);
+
+        final CompletableFuture<String> first = batcher.submit("a");
+        final CompletableFuture<String> second = batcher.submit("b");
+        batcher.flush();
+        response.completeExceptionally(failure);
+
+        Assertions.assertSame(failure, Assertions.assertThrows(CompletionException.class, first::join).getCause());
+        Assertions.assertSame(failure, Assertions.assertThrows(CompletionException.class, second::join).getCause());
+    }
+
+    @Test
+    void testErrorWhileSendingFailsEveryKeyAndIsRethrown() {
+        final IllegalStateException failure = new IllegalStateException("Too many retries");
+        final RequestBatcher<String, String> batcher = new RequestBatcher<>(10, 1, TimeUnit.HOURS, keys -> {
+            throw failure;
+        }, scheduler);
+
+        final CompletableFuture<String> first = batcher.submit("a");
+        final CompletableFuture<String> second = batcher.submit("b");
+
+        Assertions.assertSame(failure, Assertions.assertThrows(IllegalStateException.class, batcher::flush));
+        Assertions.assertTrue(first.isCompletedExceptionally());
+        Assertions.assertTrue(second.isCompletedExceptionally());
+    }
+
+    private CompletableFuture<Map<String, String>> upperCase(final List<String> keys) {
+        batches.add(keys);
+        final Map<String, String> results = new HashMap<>();
+        keys.forEach(key -> results.put(key, key.toUpperCase()));
+        return CompletableFuture.completedFuture(results);
+    }
+}
@@ -0,0 +1,87 @@
+package com.experian.aperture.datastudio.sdk.step.examples;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class RetryPolicyTest {
+    private static final String DELAY_HEADER = "X-Ttl";
+    // the jitter is random, so each bound is checked over many draws
+    private static final int DRAWS = 200;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final RetryPolicy policy = new RetryPolicy(3, 1, 8, TimeUnit.SECONDS, scheduler, DELAY_HEADER);
+    private final Map<String, String> headers = new HashMap<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testCanRetryUpToMaxRetries() {
+        Assertions.assertTrue(policy.canRetry(2));
+        Assertions.assertFalse(policy.canRetry(3));
+    }
+
+    @Test
+    void testBackoffDoublesUpToMaxDelay() {
+        assertDelayBetween(1, 0, 1000);
+        assertDelayBetween(3, 0, 4000);
+        assertDelayBetween(10, 0, 8000);
+    }
+
+    @Test
+    void testDelayHeaderInSeconds() {
+        headers.put(DELAY_HEADER, "10");
+        assertDelayBetween(1, 10_000, 11_000);
+    }
+
+    @Test
+    void testLongestRequestedDelayWins() {
+        headers.put("Retry-After", "5");
+        headers.put(DELAY_HEADER, "2");
+        assertDelayBetween(1, 5000, 6000);
+    }
+
+    @Test
+    void testRetryAfterDate() {
+        headers.put("Retry-After", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30)));
+        // the date is only precise to the second
+        assertDelayBetween(1, 29_000, 31_000);
+    }
+
+    @Test
+    void testInvalidHeadersAreIgnored() {
+        headers.put("Retry-After", "soon");
+        headers.put(DELAY_HEADER, "-5");
+        assertDelayBetween(1, 0, 1000);
+    }
+
+    @Test
+    void testRetryRunsAfterDelay() {
+        final long start = System.nanoTime();
+        final CompletableFuture<String> result = policy.retryAfter(50, () -> CompletableFuture.completedFuture("retried"));
+
+        Assertions.assertEquals("retried", result.join());
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private void assertDelayBetween(final int retry, final long minMillis, final long maxMillis) {
+        for (int draw = 0; draw < DRAWS; draw++) {
+            final long delay = policy.delayMillis(retry, headers::get);
+            Assertions.assertTrue(delay >= minMillis && delay <= maxMillis,
+                    "Delay of retry " + retry + " is " + delay + " ms, expected " + minMillis + ".." + maxMillis);
+        }
+    }
+}